@@ -0,0 +1,7 @@
+package cs309.stocks.Exceptions;
+
+public class TradeRejectedException extends RuntimeException {
+    public TradeRejectedException(String message) {
+        super(message);
+    }
+}
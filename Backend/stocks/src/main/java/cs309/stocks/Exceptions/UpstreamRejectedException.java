@@ -0,0 +1,7 @@
+package cs309.stocks.Exceptions;
+
+public class UpstreamRejectedException extends RuntimeException {
+    public UpstreamRejectedException(String message) {
+        super(message);
+    }
+}
@@ -1,9 +1,11 @@
 package cs309.stocks.Portfolios;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import cs309.stocks.Stocks.Stock;
 import cs309.stocks.Users.User;
-import cs309.stocks.api.FinnHub;
+import cs309.stocks.api.MarketDataProvider;
+import cs309.stocks.api.Quote;
 import cs309.stocks.classroom.Classroom;
 import jakarta.persistence.*;
 import lombok.Getter;
@@ -12,7 +14,7 @@ import lombok.Setter;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 
-import java.util.List;
+import java.util.*;
 
 @Entity
 @Getter
@@ -26,6 +28,12 @@ public class Portfolio {
     private String name;
     private double cash;
 
+    // Bumped on every update, so concurrent trades cannot both spend the same cash
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    @JsonIgnore
+    private long version;
+
     @Transient
     private double value;
 
@@ -35,8 +43,12 @@ public class Portfolio {
     @OnDelete(action = OnDeleteAction.CASCADE)
     private User user;
 
+    // Holdings keyed by ticker; (portfolio_id, ticker) is unique, see Stock
     @OneToMany(mappedBy = "portfolio", fetch = FetchType.EAGER)
-    private List<Stock> stocks;
+    @MapKey(name = "ticker")
+    @OrderBy("id")
+    @JsonIgnore
+    private Map<String, Stock> positions = new LinkedHashMap<>();
 
     @ManyToOne
     @JoinColumn(name = "classroom_id")
@@ -51,11 +63,64 @@ public class Portfolio {
         this.classroom = classroom;
     }
 
-    public void calculateValue(FinnHub api) {
+    /**
+     * The holding in {@code ticker}, or null if there is none.
+     */
+    public Stock getPosition(String ticker) {
+        return positions.get(ticker.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Holdings as a list, which is how they appear in JSON.
+     */
+    @JsonProperty("stocks")
+    public List<Stock> getStocks() {
+        return new ArrayList<>(positions.values());
+    }
+
+    /**
+     * Replaces the holdings; null means none. Keyed the way {@link #getPosition} looks them up.
+     */
+    @JsonProperty("stocks")
+    public void setStocks(List<Stock> stocks) {
+        positions = new LinkedHashMap<>();
+        if (stocks == null) {
+            return;
+        }
+        for (Stock stock : stocks) {
+            positions.put(stock.getTicker().toUpperCase(Locale.ROOT), stock);
+        }
+    }
+
+    /**
+     * Collects the tickers held across the given portfolios, so they can be quoted in one batch.
+     */
+    public static Set<String> tickersOf(Collection<Portfolio> portfolios) {
+        Set<String> tickers = new LinkedHashSet<>();
+        for (Portfolio portfolio : portfolios) {
+            if (portfolio != null) {
+                for (Stock stock : portfolio.getPositions().values()) {
+                    tickers.add(stock.getTicker());
+                }
+            }
+        }
+        return tickers;
+    }
+
+    public void calculateValue(MarketDataProvider api) {
+        calculateValue(api.quotes(tickersOf(List.of(this))));
+    }
+
+    /**
+     * Values this portfolio using already fetched quotes.
+     *
+     * @param quotes quotes keyed by ticker, covering every stock in the portfolio
+     */
+    public void calculateValue(Map<String, Quote> quotes) {
         double value = this.getCash();
 
-        for (Stock stock : this.getStocks()) {
-            double price = api.quote(stock.getTicker()).getCurrentPrice();
+        for (Stock stock : positions.values()) {
+            double price = quotes.get(stock.getTicker()).getCurrentPrice();
             value += price * stock.getShares();
             stock.setPrice(price);
         }
@@ -1,9 +1,15 @@
 package cs309.stocks.Portfolios;
 
+import cs309.stocks.Exceptions.UpstreamRejectedException;
+import cs309.stocks.Stocks.Stock;
 import cs309.stocks.Users.User;
 import cs309.stocks.Users.UserRepository;
 import cs309.stocks.Users.UserRole;
-import cs309.stocks.api.FinnHub;
+import cs309.stocks.api.MarketCalendar;
+import cs309.stocks.api.MarketDataProvider;
+import cs309.stocks.api.PriceSeries;
+import cs309.stocks.api.Quote;
+import cs309.stocks.api.Resolution;
 import cs309.stocks.docs.PortfolioPost;
 import cs309.stocks.docs.PortfolioPut;
 import io.swagger.v3.oas.annotations.media.ArraySchema;
@@ -18,7 +24,10 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/portfolio")
@@ -29,6 +38,12 @@ public class PortfolioController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private MarketDataProvider marketData;
+
+    @Autowired
+    private PortfolioHistory portfolioHistory;
+
     @io.swagger.v3.oas.annotations.parameters.RequestBody(content = @Content(schema = @Schema(implementation = PortfolioPost.class)))
     @ApiResponses({
             @ApiResponse(responseCode = "200", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Portfolio created"))),
@@ -52,10 +67,10 @@ public class PortfolioController {
     public List<Portfolio> getPortfolios() {
         User user = getCurrentUser();
         List<Portfolio> portfolios = user.getPortfolios();
-        FinnHub fh = FinnHub.getInstance();
+        Map<String, Quote> quotes = marketData.quotes(Portfolio.tickersOf(portfolios));
 
         for (Portfolio portfolio : portfolios) {
-            portfolio.calculateValue(fh);
+            portfolio.calculateValue(quotes);
         }
 
         return portfolios;
@@ -70,16 +85,37 @@ public class PortfolioController {
     public ResponseEntity<Portfolio> getPortfolioById(@RequestParam int id) {
         ResponseEntity<Portfolio> res = getPortfolio(id, true);
         if (res.getBody() != null) {
-            res.getBody().calculateValue(FinnHub.getInstance());
+            res.getBody().calculateValue(marketData);
         }
         return res;
     }
 
+    /**
+     * The portfolio as it stood at {@code timestamp} (epoch milliseconds), valued at each holding's
+     * closing price that day.
+     */
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Portfolio.class))),
+            @ApiResponse(responseCode = "404", content = @Content(mediaType = "application/json", schema = @Schema(example = "null"))),
+            @ApiResponse(responseCode = "403", content = @Content(mediaType = "application/json", schema = @Schema(example = "null")))
+    })
+    @GetMapping("/asof")
+    public ResponseEntity<Portfolio> getPortfolioAsOf(@RequestParam int id, @RequestParam long timestamp) {
+        ResponseEntity<Portfolio> res = getPortfolio(id, true);
+        if (res.getBody() == null) {
+            return res;
+        }
+        Portfolio past = portfolioHistory.asOf(res.getBody(), timestamp);
+        valueAt(past, timestamp);
+        return ResponseEntity.ok(past);
+    }
+
     @io.swagger.v3.oas.annotations.parameters.RequestBody(content = @Content(schema = @Schema(implementation = PortfolioPut.class)))
     @ApiResponses({
             @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Portfolio.class))),
             @ApiResponse(responseCode = "404", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Portfolio.class))),
-            @ApiResponse(responseCode = "403", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Portfolio.class)))
+            @ApiResponse(responseCode = "403", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Portfolio.class))),
+            @ApiResponse(responseCode = "503", content = @Content(mediaType = "application/json", schema = @Schema(implementation = Portfolio.class)))
     })
     @PutMapping("")
     public ResponseEntity<Portfolio> updatePortfolio(@RequestBody Portfolio portfolio) {
@@ -90,9 +126,16 @@ public class PortfolioController {
         if (oldPortfolio.getUser().getId() != getCurrentUser().getId() || oldPortfolio.getClassroom() != null) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(portfolio);
         }
-        oldPortfolio.setCash(portfolio.getCash());
         oldPortfolio.setName(portfolio.getName());
-        portfolioRepository.save(oldPortfolio);
+        if (oldPortfolio.getCash() != portfolio.getCash()) {
+            try {
+                portfolioHistory.changeCash(oldPortfolio, portfolio.getCash());
+            } catch (UpstreamRejectedException e) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(portfolio);
+            }
+        } else {
+            portfolioRepository.save(oldPortfolio);
+        }
         return ResponseEntity.ok(oldPortfolio);
     }
 
@@ -113,6 +156,27 @@ public class PortfolioController {
         return response;
     }
 
+    /**
+     * Values a portfolio at the close on the day of {@code timestamp}, or at live prices from today on.
+     */
+    private void valueAt(Portfolio portfolio, long timestamp) {
+        LocalDate day = Instant.ofEpochMilli(timestamp).atZone(MarketCalendar.ZONE).toLocalDate();
+        if (!day.isBefore(LocalDate.now(MarketCalendar.ZONE))) {
+            portfolio.calculateValue(marketData);
+            return;
+        }
+        double value = portfolio.getCash();
+        for (Stock stock : portfolio.getPositions().values()) {
+            PriceSeries history = marketData.history(stock.getTicker(), Resolution.DAY);
+            // The last close on or before that day
+            int i = history.lowerBound((int) day.toEpochDay() + 1) - 1;
+            double price = i >= 0 ? history.close(i) : 0;
+            stock.setPrice(price);
+            value += price * stock.getShares();
+        }
+        portfolio.setValue(value);
+    }
+
     private User getCurrentUser() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String username = authentication.getName();
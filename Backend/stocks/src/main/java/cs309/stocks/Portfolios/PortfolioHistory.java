@@ -0,0 +1,258 @@
+package cs309.stocks.Portfolios;
+
+import cs309.stocks.Stocks.Stock;
+import cs309.stocks.Stocks.TradeJournal;
+import cs309.stocks.api.Settings;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rebuilds a portfolio as it stood at any moment from its {@link cs309.stocks.Transactions.Transaction}
+ * rows: each buy takes {@code shares * price} from cash and adds the shares, each sale the reverse.
+ * <p>
+ * Replaying years of trades for every request would be slow, so a {@link PortfolioSnapshot} is taken
+ * once a portfolio has PORTFOLIO_SNAPSHOT_EVERY transactions since its last one. A rebuild starts from
+ * the latest snapshot taken by then and replays only the transactions after it; a moment before the
+ * first snapshot is reached by undoing transactions from that snapshot instead. A portfolio's first
+ * snapshot also fills in snapshots for its past by walking its transactions backwards from the live
+ * rows. Each new snapshot is checked against a replay from the previous one, and any difference is
+ * counted as drift.
+ * <p>
+ * Trades on one portfolio commit one at a time (they all update its versioned row), so its
+ * transaction ids follow the order the trades happened in. Cash changed through {@code PUT /portfolio}
+ * is not a transaction, so {@link #changeCash} snapshots the portfolio on both sides of the change.
+ * With the trade journal enabled, the newest trades are missing until they have been written to MySQL.
+ */
+@Service
+public class PortfolioHistory {
+    private static final String FORWARD = "select ticker, shares, price from transaction " +
+            "where portfolio_id = ? and id > ? and transaction_date <= ? order by id";
+    private static final String BACKWARD = "select ticker, shares, price from transaction " +
+            "where portfolio_id = ? and id <= ? and transaction_date > ? order by id desc";
+    private static final String BETWEEN = "select ticker, shares, price from transaction " +
+            "where portfolio_id = ? and id > ? and id <= ? order by id";
+    private static final String ALL_BACKWARD = "select id, ticker, shares, price, transaction_date from transaction " +
+            "where portfolio_id = ? and id <= ? order by id desc";
+    private static final String DUE = "select p.id from portfolio p left join " +
+            "(select portfolio_id, max(last_transaction_id) as last_id from portfolio_snapshot group by portfolio_id) s on s.portfolio_id = p.id " +
+            "where (select count(*) from transaction t where t.portfolio_id = p.id and t.id > coalesce(s.last_id, 0)) >= ?";
+    private static final String INSERT = "insert into portfolio_snapshot (portfolio_id, taken_at, last_transaction_id, cash, positions) values (?, ?, ?, ?, ?)";
+    // Replays add up cash in a different order than the trades did
+    private static final double CASH_TOLERANCE = 0.005;
+
+    @Autowired
+    private PortfolioRepository portfolioRepository;
+    @Autowired
+    private PortfolioSnapshotRepository snapshotRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    @Autowired
+    private TradeJournal tradeJournal;
+
+    private final int snapshotEvery = Settings.getInt("PORTFOLIO_SNAPSHOT_EVERY", 500);
+    private TransactionTemplate consistentRead;
+
+    private final AtomicLong asOfQueries = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+    private final AtomicLong drifted = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        // The portfolio, its positions and its last transaction id are read as of one moment
+        consistentRead = new TransactionTemplate(transactionManager);
+        consistentRead.setReadOnly(true);
+        consistentRead.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    /**
+     * The portfolio's cash and holdings at {@code timestamp}, as a portfolio that is not saved. Holdings
+     * have no price yet.
+     */
+    public Portfolio asOf(Portfolio portfolio, long timestamp) {
+        asOfQueries.incrementAndGet();
+        Timestamp at = new Timestamp(timestamp);
+        State state;
+        PortfolioSnapshot before = snapshotRepository.findFirstByPortfolioAndTakenAtLessThanEqualOrderByTakenAtDescIdDesc(portfolio, timestamp);
+        if (before != null) {
+            state = State.of(before);
+            replay(FORWARD, state, 1, portfolio.getId(), before.getLastTransactionId(), at);
+        } else {
+            PortfolioSnapshot first = snapshotRepository.findFirstByPortfolioOrderByTakenAtAscIdAsc(portfolio);
+            state = first != null ? State.of(first) : live(portfolio.getId());
+            replay(BACKWARD, state, -1, portfolio.getId(), state.lastTransactionId, at);
+        }
+
+        Portfolio past = new Portfolio();
+        past.setId(portfolio.getId());
+        past.setName(portfolio.getName());
+        past.setCash(state.cash);
+        List<Stock> stocks = new ArrayList<>();
+        for (Map.Entry<String, Integer> holding : state.holdings.entrySet()) {
+            stocks.add(new Stock(holding.getKey(), holding.getValue(), null));
+        }
+        past.setStocks(stocks);
+        return past;
+    }
+
+    /**
+     * Sets the portfolio's cash outside of a trade, snapshotting it just before and just after so
+     * rebuilds on either side of the change come out right. With the trade journal enabled, this waits
+     * for the portfolio's journaled trades to reach the database.
+     *
+     * @throws cs309.stocks.Exceptions.UpstreamRejectedException if they did not get there in time
+     */
+    public void changeCash(Portfolio portfolio, double cash) {
+        tradeJournal.runSettled(portfolio.getId(), () -> transactionTemplate.executeWithoutResult(status -> {
+            long now = System.currentTimeMillis();
+            State state = live(portfolio.getId());
+            save(portfolio, now, state);
+            portfolio.setCash(cash);
+            // Versioned, so a trade committed since the portfolio was read rolls all of this back
+            portfolioRepository.save(portfolio);
+            state.cash = cash;
+            save(portfolio, now, state);
+        }));
+    }
+
+    @Scheduled(initialDelay = 600000, fixedDelay = 600000)
+    public void takeSnapshots() {
+        for (int portfolioId : jdbcTemplate.queryForList(DUE, Integer.class, snapshotEvery)) {
+            try {
+                snapshot(portfolioId);
+            } catch (DataAccessException e) {
+                // Deleted while this ran, most likely; anything else is retried next time
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("asOfQueries", asOfQueries.get());
+        metrics.put("replayedTransactions", replayed.get());
+        metrics.put("snapshots", snapshots.get());
+        metrics.put("drifted", drifted.get());
+        return metrics;
+    }
+
+    private void snapshot(int portfolioId) {
+        long now = System.currentTimeMillis();
+        Portfolio portfolio = portfolioRepository.findById(portfolioId);
+        if (portfolio == null) {
+            return;
+        }
+        State current = live(portfolioId);
+        PortfolioSnapshot last = snapshotRepository.findFirstByPortfolioOrderByTakenAtDescIdDesc(portfolio);
+        if (last == null) {
+            backfill(portfolioId, current);
+        } else {
+            State expected = State.of(last);
+            replay(BETWEEN, expected, 1, portfolioId, last.getLastTransactionId(), current.lastTransactionId);
+            if (!expected.matches(current)) {
+                drifted.incrementAndGet();
+            }
+        }
+        save(portfolio, now, current);
+    }
+
+    /**
+     * Walks a portfolio's transactions back from {@code current}, snapshotting it every
+     * PORTFOLIO_SNAPSHOT_EVERY transactions as it stood just after each one.
+     */
+    private void backfill(int portfolioId, State current) {
+        State state = current.copy();
+        List<Object[]> rows = new ArrayList<>();
+        int[] undone = {0};
+        jdbcTemplate.query(ALL_BACKWARD, rs -> {
+            if (undone[0] > 0 && undone[0] % snapshotEvery == 0) {
+                rows.add(new Object[]{portfolioId, rs.getTimestamp(5).getTime(), rs.getInt(1), state.cash, PortfolioSnapshot.encode(state.holdings)});
+            }
+            state.apply(rs.getString(2), rs.getInt(3), rs.getDouble(4), -1);
+            undone[0]++;
+        }, portfolioId, current.lastTransactionId);
+        replayed.addAndGet(undone[0]);
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT, rows);
+            snapshots.addAndGet(rows.size());
+        }
+    }
+
+    private State live(int portfolioId) {
+        return consistentRead.execute(status -> {
+            State state = new State();
+            state.cash = jdbcTemplate.queryForObject("select cash from portfolio where id = ?", Double.class, portfolioId);
+            jdbcTemplate.query("select ticker, shares from stock where portfolio_id = ? order by id",
+                    rs -> {
+                        state.holdings.put(rs.getString(1), rs.getInt(2));
+                    }, portfolioId);
+            state.lastTransactionId = jdbcTemplate.queryForObject("select coalesce(max(id), 0) from transaction where portfolio_id = ?", Integer.class, portfolioId);
+            return state;
+        });
+    }
+
+    private void replay(String sql, State state, int direction, Object... args) {
+        jdbcTemplate.query(sql, rs -> {
+            state.apply(rs.getString(1), rs.getInt(2), rs.getDouble(3), direction);
+            replayed.incrementAndGet();
+        }, args);
+    }
+
+    private void save(Portfolio portfolio, long takenAt, State state) {
+        snapshotRepository.save(new PortfolioSnapshot(portfolio, takenAt, state.lastTransactionId, state.cash, state.holdings));
+        snapshots.incrementAndGet();
+    }
+
+    /**
+     * Cash and holdings at one point in a portfolio's history, which includes every transaction up to
+     * {@code lastTransactionId} (and, for a rebuild, none after the moment asked for).
+     */
+    private static class State {
+        private double cash;
+        private Map<String, Integer> holdings = new LinkedHashMap<>();
+        private int lastTransactionId;
+
+        static State of(PortfolioSnapshot snapshot) {
+            State state = new State();
+            state.cash = snapshot.getCash();
+            state.holdings = snapshot.getHoldings();
+            state.lastTransactionId = snapshot.getLastTransactionId();
+            return state;
+        }
+
+        State copy() {
+            State copy = new State();
+            copy.cash = cash;
+            copy.holdings = new LinkedHashMap<>(holdings);
+            copy.lastTransactionId = lastTransactionId;
+            return copy;
+        }
+
+        /**
+         * Applies a transaction, or undoes it when {@code direction} is -1.
+         */
+        void apply(String ticker, int shares, double price, int direction) {
+            cash -= direction * shares * price;
+            holdings.merge(ticker, direction * shares, (held, change) -> held + change == 0 ? null : held + change);
+        }
+
+        boolean matches(State other) {
+            return Math.abs(cash - other.cash) < CASH_TOLERANCE && holdings.equals(other.holdings);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package cs309.stocks.Portfolios;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A portfolio's cash and holdings once every {@link cs309.stocks.Transactions.Transaction} up to
+ * {@code lastTransactionId} had been applied, so {@link PortfolioHistory} only has to replay the
+ * transactions after it.
+ */
+@Entity
+@Table(indexes = @Index(name = "ix_portfolio_snapshot_portfolio_taken_at", columnList = "portfolio_id, taken_at"))
+@Getter
+@Setter
+@NoArgsConstructor
+public class PortfolioSnapshot {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private int id;
+
+    @ManyToOne
+    @JoinColumn(name = "portfolio_id")
+    @JsonIgnore
+    @OnDelete(action = OnDeleteAction.CASCADE)
+    private Portfolio portfolio;
+
+    // Epoch milliseconds
+    @Column(name = "taken_at")
+    private long takenAt;
+    private int lastTransactionId;
+    private double cash;
+    // Holdings as "AAPL:10;MSFT:5"
+    @Column(columnDefinition = "text")
+    private String positions;
+
+    public PortfolioSnapshot(Portfolio portfolio, long takenAt, int lastTransactionId, double cash, Map<String, Integer> holdings) {
+        this.portfolio = portfolio;
+        this.takenAt = takenAt;
+        this.lastTransactionId = lastTransactionId;
+        this.cash = cash;
+        this.positions = encode(holdings);
+    }
+
+    /**
+     * Holdings by ticker.
+     */
+    public Map<String, Integer> getHoldings() {
+        Map<String, Integer> holdings = new LinkedHashMap<>();
+        if (positions == null || positions.isEmpty()) {
+            return holdings;
+        }
+        for (String position : positions.split(";")) {
+            int colon = position.lastIndexOf(':');
+            holdings.put(position.substring(0, colon), Integer.parseInt(position.substring(colon + 1)));
+        }
+        return holdings;
+    }
+
+    static String encode(Map<String, Integer> holdings) {
+        StringBuilder encoded = new StringBuilder();
+        for (Map.Entry<String, Integer> holding : holdings.entrySet()) {
+            if (!encoded.isEmpty()) {
+                encoded.append(';');
+            }
+            encoded.append(holding.getKey()).append(':').append(holding.getValue());
+        }
+        return encoded.toString();
+    }
+}
@@ -0,0 +1,12 @@
+package cs309.stocks.Portfolios;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface PortfolioSnapshotRepository extends JpaRepository<PortfolioSnapshot, Integer> {
+    // Snapshots taken at the same moment (around a cash change) are told apart by id
+    PortfolioSnapshot findFirstByPortfolioAndTakenAtLessThanEqualOrderByTakenAtDescIdDesc(Portfolio portfolio, long takenAt);
+
+    PortfolioSnapshot findFirstByPortfolioOrderByTakenAtAscIdAsc(Portfolio portfolio);
+
+    PortfolioSnapshot findFirstByPortfolioOrderByTakenAtDescIdDesc(Portfolio portfolio);
+}
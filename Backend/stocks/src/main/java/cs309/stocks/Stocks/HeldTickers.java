@@ -0,0 +1,73 @@
+package cs309.stocks.Stocks;
+
+import cs309.stocks.api.MarketDataProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Keeps live prices flowing for every ticker held in some portfolio, by counting the positions in each.
+ * Trades report a position opening or closing, which only touches that ticker's count. The periodic
+ * refresh recounts from the database, which also catches positions removed along with their
+ * portfolio, user or classroom, and any trade that raced with the previous recount.
+ */
+@Component
+public class HeldTickers {
+    @Autowired
+    private StockRepository stockRepository;
+    @Autowired
+    private MarketDataProvider marketData;
+
+    private final Map<String, Integer> positions = new HashMap<>();
+
+    public synchronized void opened(String ticker) {
+        String key = ticker.toUpperCase(Locale.ROOT);
+        if (positions.merge(key, 1, Integer::sum) == 1) {
+            marketData.watch(key);
+        }
+    }
+
+    public synchronized void closed(String ticker) {
+        String key = ticker.toUpperCase(Locale.ROOT);
+        Integer count = positions.get(key);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            positions.put(key, count - 1);
+        } else {
+            positions.remove(key);
+            marketData.unwatch(key);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelay = 300000, fixedDelay = 300000)
+    public void refresh() {
+        // Counted outside the lock, so trades reporting positions never wait on the scan
+        Map<String, Integer> counted = new HashMap<>();
+        for (Object[] row : stockRepository.countPositionsByTicker()) {
+            counted.put((String) row[0], ((Number) row[1]).intValue());
+        }
+        synchronized (this) {
+            for (String ticker : counted.keySet()) {
+                if (!positions.containsKey(ticker)) {
+                    marketData.watch(ticker);
+                }
+            }
+            for (String ticker : positions.keySet()) {
+                if (!counted.containsKey(ticker)) {
+                    marketData.unwatch(ticker);
+                }
+            }
+            positions.clear();
+            positions.putAll(counted);
+        }
+    }
+}
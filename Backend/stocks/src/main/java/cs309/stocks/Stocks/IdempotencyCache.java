@@ -0,0 +1,281 @@
+package cs309.stocks.Stocks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import cs309.stocks.api.Settings;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Makes trade requests safe to retry. A request sent with an {@code Idempotency-Key} header runs once;
+ * a retry with the same key gets the first response back without trading or quoting again.
+ * <p>
+ * The most recent IDEMPOTENCY_CACHE_SIZE responses are held in memory. Every key stored in the
+ * database is also remembered as a 64-bit hash, so a key that has never been seen (the usual case) is
+ * known to be new without asking the database; only a key whose response has been evicted from memory
+ * costs a lookup. Keys are kept for IDEMPOTENCY_KEY_RETENTION_MS.
+ * <p>
+ * A new key is claimed in the database (as a pending record) before the request runs, and its response
+ * written there before it is returned. If the server dies while the request runs, the pending record
+ * is all a retry finds, and it is refused rather than run again, since the trade may have gone
+ * through.
+ * <p>
+ * Responses that say to try again (409 and 5xx) are not kept, so retrying them does retry.
+ */
+@Component
+public class IdempotencyCache {
+    private static final String CLAIM = "insert ignore into idempotency_record (id, fingerprint, status, content_type, body, created_at) values (?, ?, 0, null, null, ?)";
+    private static final String DELETE_EXPIRED = "delete from idempotency_record where id = ? and created_at < ?";
+    private static final String COMPLETE = "update idempotency_record set status = ?, content_type = ?, body = ? where id = ?";
+    private static final String RELEASE = "delete from idempotency_record where id = ? and status = 0";
+    // Status of a claimed key whose request has not finished
+    private static final int PENDING = 0;
+    // A pending key older than this, and not running here, belongs to a request that never finished
+    private static final long INTERRUPTED_AFTER_MILLIS = 60000;
+    private static final int MAX_KEY_LENGTH = 255;
+
+    @Autowired
+    private IdempotencyRecordRepository recordRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final long retentionMillis = Settings.getLong("IDEMPOTENCY_KEY_RETENTION_MS", 86400000);
+    private final Map<String, IdempotencyRecord> recent;
+    private final Set<Long> stored = ConcurrentHashMap.newKeySet();
+    private final Set<String> inProgress = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong databaseLookups = new AtomicLong();
+    private final AtomicLong mismatches = new AtomicLong();
+    private final AtomicLong interrupted = new AtomicLong();
+
+    public IdempotencyCache() {
+        int maxEntries = Settings.getInt("IDEMPOTENCY_CACHE_SIZE", 10000);
+        recent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @PostConstruct
+    void load() {
+        for (String id : recordRepository.findIdsCreatedSince(System.currentTimeMillis() - retentionMillis)) {
+            stored.add(hash(id));
+        }
+    }
+
+    /**
+     * Runs {@code action} unless {@code key} was already used by {@code username}, in which case the
+     * response it got then is returned.
+     *
+     * @param key     the Idempotency-Key header, or null to just run the action
+     * @param request what is being asked for; reusing a key for a different request is refused
+     */
+    public ResponseEntity<?> execute(String key, String username, String request, Supplier<ResponseEntity<?>> action) {
+        if (key == null) {
+            return action.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Idempotency-Key must be 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        String id = username.length() + ":" + username + ":" + key;
+        String fingerprint = sha256(request);
+
+        IdempotencyRecord record = find(id);
+        if (record == null) {
+            if (!inProgress.add(id)) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body("A request with this Idempotency-Key is still in progress");
+            }
+            try {
+                // It may have finished between the lookup and claiming the key
+                record = find(id);
+                if (record == null && claim(id, fingerprint)) {
+                    executed.incrementAndGet();
+                    ResponseEntity<?> response;
+                    try {
+                        response = action.get();
+                    } catch (RuntimeException e) {
+                        release(id);
+                        throw e;
+                    }
+                    remember(id, fingerprint, response);
+                    return response;
+                }
+                if (record == null) {
+                    // Claimed by another server since the lookup
+                    record = find(id);
+                }
+            } finally {
+                inProgress.remove(id);
+            }
+        }
+
+        if (record == null || record.getStatus() == PENDING) {
+            if (record != null && !inProgress.contains(id)
+                    && System.currentTimeMillis() - record.getCreatedAt() > INTERRUPTED_AFTER_MILLIS) {
+                interrupted.incrementAndGet();
+                return ResponseEntity.status(HttpStatus.CONFLICT)
+                        .body("The request with this Idempotency-Key was interrupted, check the portfolio before trying again with a new key");
+            }
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("A request with this Idempotency-Key is still in progress");
+        }
+        if (!record.getFingerprint().equals(fingerprint)) {
+            mismatches.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body("Idempotency-Key was already used for a different request");
+        }
+        replays.incrementAndGet();
+        return ResponseEntity.status(record.getStatus())
+                .contentType(MediaType.parseMediaType(record.getContentType()))
+                .header("Idempotent-Replayed", "true")
+                .body(record.getBody());
+    }
+
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        synchronized (recent) {
+            metrics.put("cached", recent.size());
+        }
+        metrics.put("stored", stored.size());
+        metrics.put("executed", executed.get());
+        metrics.put("replays", replays.get());
+        metrics.put("databaseLookups", databaseLookups.get());
+        metrics.put("mismatches", mismatches.get());
+        metrics.put("interrupted", interrupted.get());
+        return metrics;
+    }
+
+    @Scheduled(initialDelay = 600000, fixedDelay = 600000)
+    public void expireKeys() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        for (String id : recordRepository.findIdsCreatedBefore(cutoff)) {
+            stored.remove(hash(id));
+        }
+        recordRepository.deleteCreatedBefore(cutoff);
+        synchronized (recent) {
+            recent.values().removeIf(record -> record.getCreatedAt() < cutoff);
+        }
+    }
+
+    private IdempotencyRecord find(String id) {
+        IdempotencyRecord record;
+        synchronized (recent) {
+            record = recent.get(id);
+        }
+        if (record != null || !stored.contains(hash(id))) {
+            return record;
+        }
+        databaseLookups.incrementAndGet();
+        record = recordRepository.findById(id).orElse(null);
+        if (record != null && record.getCreatedAt() >= System.currentTimeMillis() - retentionMillis) {
+            if (record.getStatus() != PENDING) {
+                synchronized (recent) {
+                    recent.put(id, record);
+                }
+            }
+            return record;
+        }
+        return null;
+    }
+
+    /**
+     * Records in the database that a request with this key has started.
+     *
+     * @return false if another server claimed it first
+     */
+    private boolean claim(String id, String fingerprint) {
+        long now = System.currentTimeMillis();
+        stored.add(hash(id));
+        if (jdbcTemplate.update(CLAIM, id, fingerprint, now) == 1) {
+            return true;
+        }
+        // An expired record that has not been cleaned up yet does not count
+        jdbcTemplate.update(DELETE_EXPIRED, id, now - retentionMillis);
+        return jdbcTemplate.update(CLAIM, id, fingerprint, now) == 1;
+    }
+
+    /**
+     * Gives up a claimed key, so the request can be sent again with it.
+     */
+    private void release(String id) {
+        try {
+            jdbcTemplate.update(RELEASE, id);
+        } catch (RuntimeException e) {
+            // The key stays pending, and retries with it are refused until it expires
+            e.printStackTrace();
+        }
+    }
+
+    private void remember(String id, String fingerprint, ResponseEntity<?> response) {
+        int status = response.getStatusCode().value();
+        if (status == HttpStatus.CONFLICT.value() || status >= 500) {
+            release(id);
+            return;
+        }
+        String contentType;
+        String body;
+        if (response.getBody() == null || response.getBody() instanceof String) {
+            contentType = MediaType.TEXT_PLAIN_VALUE;
+            body = response.getBody() == null ? "" : (String) response.getBody();
+        } else {
+            contentType = MediaType.APPLICATION_JSON_VALUE;
+            try {
+                body = objectMapper.writeValueAsString(response.getBody());
+            } catch (JsonProcessingException e) {
+                e.printStackTrace();
+                release(id);
+                return;
+            }
+        }
+        IdempotencyRecord record = new IdempotencyRecord(id, fingerprint, status, contentType, body, System.currentTimeMillis());
+        synchronized (recent) {
+            recent.put(id, record);
+        }
+        try {
+            // Written before the response goes out, so a retry after a crash still finds it
+            jdbcTemplate.update(COMPLETE, status, contentType, body, id);
+        } catch (RuntimeException e) {
+            // Retries are answered from memory; after a restart they find the key pending and are refused
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a, enough to make a collision between stored keys (which only costs a lookup) rare.
+     */
+    private static long hash(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    private static String sha256(String request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(request.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package cs309.stocks.Stocks;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * The response a trade request sent with an {@code Idempotency-Key} got, kept so a retry of the same
+ * request gets it again instead of trading twice.
+ */
+@Entity
+@Table(indexes = @Index(name = "ix_idempotency_record_created_at", columnList = "created_at"))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecord {
+
+    // The user's name and the key the client sent
+    @Id
+    @Column(length = 400)
+    private String id;
+    // SHA-256 of the request the key was first used for
+    @Column(length = 64)
+    private String fingerprint;
+    private int status;
+    private String contentType;
+    @Column(columnDefinition = "mediumtext")
+    private String body;
+    @Column(name = "created_at")
+    private long createdAt;
+}
@@ -0,0 +1,21 @@
+package cs309.stocks.Stocks;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+    @Query("select r.id from IdempotencyRecord r where r.createdAt >= ?1")
+    List<String> findIdsCreatedSince(long since);
+
+    @Query("select r.id from IdempotencyRecord r where r.createdAt < ?1")
+    List<String> findIdsCreatedBefore(long before);
+
+    @Modifying
+    @Transactional
+    @Query("delete from IdempotencyRecord r where r.createdAt < ?1")
+    int deleteCreatedBefore(long before);
+}
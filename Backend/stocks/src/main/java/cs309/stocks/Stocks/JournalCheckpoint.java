@@ -0,0 +1,22 @@
+package cs309.stocks.Stocks;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * The sequence number of the last {@link TradeLog} record applied to the database. There is one row,
+ * updated in the same transaction as the records it covers, so a record is never applied twice.
+ */
+@Entity
+@Getter
+@Setter
+@NoArgsConstructor
+public class JournalCheckpoint {
+
+    @Id
+    private int id;
+    private long appliedSequence;
+}
@@ -0,0 +1,20 @@
+package cs309.stocks.Stocks;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * One buy or sell in a batch sent to {@code /stock/orders}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderDTO {
+    private String ticker;
+    private int shares;
+    // "buy" or "sell"
+    private String side;
+}
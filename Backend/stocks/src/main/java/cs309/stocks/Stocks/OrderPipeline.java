@@ -0,0 +1,234 @@
+package cs309.stocks.Stocks;
+
+import cs309.stocks.Exceptions.UpstreamRejectedException;
+import cs309.stocks.Users.User;
+import cs309.stocks.api.MarketDataProvider;
+import cs309.stocks.api.Quote;
+import cs309.stocks.api.RequestPriority;
+import cs309.stocks.api.Settings;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes orders off the request thread.
+ * <p>
+ * Orders are queued on one of ORDER_PIPELINE_SHARDS bounded ring buffers, chosen by portfolio id, and
+ * each buffer has a single worker thread, so every portfolio has exactly one writer and its orders run
+ * in submission order without contending with each other. A worker drains whatever has queued up (up to
+ * ORDER_PIPELINE_BATCH orders), quotes each distinct ticker once and applies each portfolio's orders as
+ * one batched database transaction. Callers get an id at once and poll {@link #status} for the fill;
+ * results are kept for ORDER_RESULT_RETENTION_MS after the order completes.
+ */
+@Component
+public class OrderPipeline {
+    @Autowired
+    private TradeService tradeService;
+    @Autowired
+    private MarketDataProvider marketData;
+
+    private final int batchSize = Settings.getInt("ORDER_PIPELINE_BATCH", 100);
+    private final long retentionMillis = Settings.getLong("ORDER_RESULT_RETENTION_MS", 600000);
+    private final List<BlockingQueue<Ticket>> shards = new ArrayList<>();
+    private final Map<Long, Ticket> tickets = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejectedFull = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong filled = new AtomicLong();
+
+    @PostConstruct
+    void start() {
+        int count = Settings.getInt("ORDER_PIPELINE_SHARDS", 4);
+        int capacity = Settings.getInt("ORDER_QUEUE_CAPACITY", 1024);
+        for (int i = 0; i < count; i++) {
+            BlockingQueue<Ticket> queue = new ArrayBlockingQueue<>(capacity);
+            Thread worker = new Thread(() -> work(queue), "order-pipeline-" + i);
+            worker.setDaemon(true);
+            shards.add(queue);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues {@code order} for the portfolio.
+     *
+     * @param order an order already checked like those sent to {@link TradeService#executeOrders}
+     * @return the order's id, or -1 if the portfolio's queue is full
+     */
+    public long submit(int portfolioId, User user, OrderDTO order) {
+        Ticket ticket = new Ticket(nextId.incrementAndGet(), portfolioId, user, order);
+        tickets.put(ticket.id, ticket);
+        if (!shards.get(Math.floorMod(portfolioId, shards.size())).offer(ticket)) {
+            tickets.remove(ticket.id);
+            rejectedFull.incrementAndGet();
+            return -1;
+        }
+        submitted.incrementAndGet();
+        return ticket.id;
+    }
+
+    /**
+     * The order's current state, or null if there is no such order for {@code user} (or its result
+     * has expired).
+     */
+    public OrderStatusDTO status(long id, User user) {
+        Ticket ticket = tickets.get(id);
+        if (ticket == null || ticket.user.getId() != user.getId()) {
+            return null;
+        }
+        OrderResultDTO result = ticket.done.getNow(null);
+        return new OrderStatusDTO(id, result == null ? "queued" : result.getStatus(), result);
+    }
+
+    /**
+     * Completes once the order is filled or rejected, for clients that would rather wait than poll.
+     */
+    public CompletableFuture<OrderResultDTO> completion(long id, User user) {
+        Ticket ticket = tickets.get(id);
+        if (ticket == null || ticket.user.getId() != user.getId()) {
+            return null;
+        }
+        return ticket.done;
+    }
+
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        int queued = 0;
+        for (BlockingQueue<Ticket> queue : shards) {
+            queued += queue.size();
+        }
+        metrics.put("queued", queued);
+        metrics.put("submitted", submitted.get());
+        metrics.put("rejectedFull", rejectedFull.get());
+        metrics.put("batches", batches.get());
+        metrics.put("filled", filled.get());
+        metrics.put("tracked", tickets.size());
+        return metrics;
+    }
+
+    @Scheduled(initialDelay = 60000, fixedDelay = 60000)
+    public void expireResults() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        tickets.values().removeIf(ticket -> ticket.done.isDone() && ticket.completedAt < cutoff);
+    }
+
+    private void work(BlockingQueue<Ticket> queue) {
+        List<Ticket> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            try {
+                execute(batch);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                for (Ticket ticket : batch) {
+                    ticket.complete(OrderResultDTO.rejected(ticket.order, "Order could not be executed"));
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    private void execute(List<Ticket> batch) {
+        batches.incrementAndGet();
+        Set<String> tickers = new HashSet<>();
+        Map<Integer, List<Ticket>> byPortfolio = new LinkedHashMap<>();
+        for (Ticket ticket : batch) {
+            tickers.add(ticket.order.getTicker());
+            byPortfolio.computeIfAbsent(ticket.portfolioId, k -> new ArrayList<>()).add(ticket);
+        }
+
+        Map<String, Double> prices = new HashMap<>();
+        Map<String, String> unpriced = new HashMap<>();
+        try {
+            for (Map.Entry<String, Quote> entry : marketData.quotes(tickers, RequestPriority.TRADE).entrySet()) {
+                prices.put(entry.getKey(), entry.getValue().getCurrentPrice());
+            }
+        } catch (RuntimeException e) {
+            // Price the tickers one at a time, so only orders for a ticker that cannot be priced fail
+            for (String ticker : tickers) {
+                try {
+                    prices.put(ticker, marketData.quote(ticker, RequestPriority.TRADE).getCurrentPrice());
+                } catch (UpstreamRejectedException rejected) {
+                    unpriced.put(ticker, rejected.getMessage());
+                } catch (RuntimeException failed) {
+                    failed.printStackTrace();
+                    unpriced.put(ticker, "Could not get a price for " + ticker);
+                }
+            }
+        }
+
+        for (List<Ticket> tickets : byPortfolio.values()) {
+            List<Ticket> group = new ArrayList<>(tickets.size());
+            List<OrderDTO> orders = new ArrayList<>(tickets.size());
+            for (Ticket ticket : tickets) {
+                String problem = unpriced.get(ticket.order.getTicker());
+                if (problem != null) {
+                    ticket.complete(OrderResultDTO.rejected(ticket.order, problem));
+                } else {
+                    group.add(ticket);
+                    orders.add(ticket.order);
+                }
+            }
+            if (group.isEmpty()) {
+                continue;
+            }
+            List<OrderResultDTO> results;
+            try {
+                results = tradeService.executeOrders(group.get(0).portfolioId, group.get(0).user, orders, prices, true);
+            } catch (RuntimeException e) {
+                for (Ticket ticket : group) {
+                    ticket.complete(OrderResultDTO.rejected(ticket.order, e.getMessage()));
+                }
+                continue;
+            }
+            for (int i = 0; i < group.size(); i++) {
+                group.get(i).complete(results.get(i));
+            }
+        }
+    }
+
+    private class Ticket {
+        private final long id;
+        private final int portfolioId;
+        private final User user;
+        private final OrderDTO order;
+        private final CompletableFuture<OrderResultDTO> done = new CompletableFuture<>();
+        private volatile long completedAt;
+
+        Ticket(long id, int portfolioId, User user, OrderDTO order) {
+            this.id = id;
+            this.portfolioId = portfolioId;
+            this.user = user;
+            this.order = order;
+        }
+
+        /**
+         * Records the outcome. Only the shard's worker completes its tickets, so the first call wins.
+         */
+        void complete(OrderResultDTO result) {
+            if (done.isDone()) {
+                return;
+            }
+            completedAt = System.currentTimeMillis();
+            if ("filled".equals(result.getStatus())) {
+                filled.incrementAndGet();
+            }
+            done.complete(result);
+        }
+    }
+}
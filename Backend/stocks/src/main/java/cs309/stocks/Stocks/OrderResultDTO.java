@@ -0,0 +1,34 @@
+package cs309.stocks.Stocks;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Outcome of one order in a batch, in the same position as the order in the request.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderResultDTO {
+    private String ticker;
+    private String side;
+    private int shares;
+    private double price;
+    // "filled" or "rejected"
+    private String status;
+    private String message;
+
+    public static OrderResultDTO filled(OrderDTO order, double price) {
+        return new OrderResultDTO(order.getTicker(), order.getSide(), order.getShares(), price, "filled", null);
+    }
+
+    public static OrderResultDTO rejected(OrderDTO order, String message) {
+        if (order == null) {
+            return new OrderResultDTO(null, null, 0, 0, "rejected", message);
+        }
+        return new OrderResultDTO(order.getTicker(), order.getSide(), order.getShares(), 0, "rejected", message);
+    }
+}
@@ -0,0 +1,21 @@
+package cs309.stocks.Stocks;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * State of an order submitted to {@code /stock/orders/async}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderStatusDTO {
+    private long id;
+    // "queued", "filled" or "rejected"
+    private String status;
+    // Null while queued
+    private OrderResultDTO result;
+}
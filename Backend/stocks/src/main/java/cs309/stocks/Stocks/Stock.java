@@ -11,6 +11,7 @@ import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_stock_portfolio_ticker", columnNames = {"portfolio_id", "ticker"}))
 @Getter
 @Setter
 @NoArgsConstructor
@@ -22,6 +23,11 @@ public class Stock {
     private String ticker;
     private int shares;
 
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    @JsonIgnore
+    private long version;
+
     @ManyToOne
     @JoinColumn(name = "portfolio_id")
     @JsonIgnore
@@ -31,6 +37,12 @@ public class Stock {
     @Transient
     private double price;
 
+    public Stock(String ticker, int shares, Portfolio portfolio) {
+        this.ticker = ticker;
+        this.shares = shares;
+        this.portfolio = portfolio;
+    }
+
     public Stock(Transaction t, Portfolio portfolio) {
         this.ticker = t.getTicker();
         this.shares = t.getShares();
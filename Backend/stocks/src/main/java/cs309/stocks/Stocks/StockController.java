@@ -2,52 +2,64 @@ package cs309.stocks.Stocks;
 
 import cs309.stocks.Exceptions.AccessDeniedException;
 import cs309.stocks.Exceptions.ResourceNotFoundException;
+import cs309.stocks.Exceptions.TradeRejectedException;
+import cs309.stocks.Exceptions.UpstreamRejectedException;
 import cs309.stocks.Portfolios.Portfolio;
 import cs309.stocks.Portfolios.PortfolioRepository;
 import cs309.stocks.Transactions.Transaction;
-import cs309.stocks.Transactions.TransactionRepository;
 import cs309.stocks.Users.User;
 import cs309.stocks.Users.UserRepository;
 import cs309.stocks.api.*;
 import cs309.stocks.docs.StockDocs;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
-import java.sql.Timestamp;
+import java.io.UncheckedIOException;
 import java.time.Instant;
-import java.util.List;
-import java.util.Locale;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/stock")
 public class StockController {
     private final boolean USE_TIME = false;
-    @Autowired
-    private TransactionRepository transactionRepository;
-    @Autowired
-    private StockRepository stockRepository;
+    private static final int SEARCH_LIMIT = 25;
+    private static final long MAX_ORDER_WAIT_MS = 25000;
+    private static final String JOURNAL_FAILED = "Trade could not be confirmed, check the portfolio before trying again";
     @Autowired
     private PortfolioRepository portfolioRepository;
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private MarketDataProvider marketData;
+    @Autowired
+    private TradeService tradeService;
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+    @Autowired
+    private OrderPipeline orderPipeline;
+    @Autowired
+    private TradeJournal tradeJournal;
 
     // Search functionality moved from SearchController
     @GetMapping("/search")
     public List<SearchResultDTO> searchStocks(@RequestParam String query) {
-        SymbolSearch symbolSearch = FinnHub.getInstance().search(query);
-
-        return symbolSearch.getResult().stream()
-                .filter(symbol -> (symbol.getDescription() != null && symbol.getDescription().toLowerCase(Locale.ROOT).contains(query.toLowerCase(Locale.ROOT))) ||
-                        (symbol.getSymbol() != null && symbol.getSymbol().toLowerCase(Locale.ROOT).contains(query.toLowerCase(Locale.ROOT))))
+        return marketData.search(query, null, SEARCH_LIMIT).stream()
                 .map(symbol -> new SearchResultDTO(
                         symbol.getDescription(),
                         symbol.getSymbol()
@@ -56,16 +68,26 @@ public class StockController {
     }
 
     // Stock information functionality moved from StockInformationController
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(implementation = StockInformationDTO.class))),
+            @ApiResponse(responseCode = "400", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Invalid symbol: BRK B")))
+    })
     @GetMapping("/info")
-    public StockInformationDTO getStockInformation(@RequestParam String symbol) {
-        // Fetch current price
-        Quote quote = FinnHub.getInstance().quote(symbol);
+    public ResponseEntity<?> getStockInformation(@RequestParam String symbol) {
+        Quote quote;
+        Stats stats;
+        try {
+            // Fetch current price
+            quote = marketData.quote(symbol);
 
-        // Fetch additional stats
-        Stats stats = FinnHub.getInstance().stats(symbol);
+            // Fetch additional stats
+            stats = marketData.stats(symbol);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
 
         // Create and return StockInformationDTO
-        return new StockInformationDTO(
+        return ResponseEntity.ok(new StockInformationDTO(
                 quote.getCurrentPrice(),
                 stats.getYearHigh(),
                 stats.getYearLow(),
@@ -74,18 +96,28 @@ public class StockController {
                 stats.getEpsAnnual(),
                 stats.getMarketCap(),
                 stats.getPeRatio()
-        );
+        ));
     }
 
     @io.swagger.v3.oas.annotations.parameters.RequestBody(content = @Content(schema = @Schema(implementation = StockDocs.class)))
     @ApiResponses({
             @ApiResponse(responseCode = "200", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Purchase successful"))),
+            @ApiResponse(responseCode = "400", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Invalid symbol: BRK B"))),
             @ApiResponse(responseCode = "404", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Portfolio not found"))),
-            @ApiResponse(responseCode = "403", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Insufficient funds | Cannot access this portfolio"))),
+            @ApiResponse(responseCode = "403", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Insufficient funds | Shares must be positive | Cannot access this portfolio"))),
+            @ApiResponse(responseCode = "409", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Portfolio is busy with another trade, try again | A request with this Idempotency-Key is still in progress"))),
+            @ApiResponse(responseCode = "422", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Idempotency-Key was already used for a different request"))),
+            @ApiResponse(responseCode = "503", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "FINNHUB request quota exhausted, try again shortly | Trades are waiting on the database, try again shortly | Trade could not be confirmed, check the portfolio before trying again"))),
     })
     @PostMapping("/buy")
-    public ResponseEntity<String> buy(@RequestBody Transaction t, @RequestParam int portfolioId) {
-        if (USE_TIME && FinnHub.getInstance().isMarketClosed()) {
+    public ResponseEntity<?> buy(@RequestBody Transaction t, @RequestParam int portfolioId,
+                                 @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return idempotencyCache.execute(idempotencyKey, getCurrentUsername(), "buy " + portfolioId + " " + t.getTicker() + " " + t.getShares(),
+                () -> executeBuy(t, portfolioId));
+    }
+
+    private ResponseEntity<?> executeBuy(Transaction t, int portfolioId) {
+        if (USE_TIME && !MarketCalendar.getInstance().isOpen(Instant.now())) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("The market is not open");
         }
 
@@ -98,51 +130,52 @@ public class StockController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
         }
 
-        double stockPrice = getPrice(t.getTicker());
-
-        t.setPrice(stockPrice);
-
-        double price = t.getShares() * stockPrice;
-        if (price > portfolio.getCash()) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Insufficient funds");
-        }
-
-        portfolio.setCash(portfolio.getCash() - price);
-        portfolioRepository.save(portfolio);
-
-        boolean added = false;
-        List<Stock> ownedStocks = portfolio.getStocks();
-        for (Stock stock : ownedStocks) {
-            if (t.getTicker().equals(stock.getTicker())) {
-                stock.setShares(stock.getShares() + t.getShares());
-                stockRepository.save(stock);
-                added = true;
-                break;
-            }
+        double stockPrice;
+        try {
+            stockPrice = getPrice(t.getTicker());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (UpstreamRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
         }
 
-        if (!added) {
-            Stock s = new Stock(t, portfolio);
-            stockRepository.save(s);
+        try {
+            tradeService.buy(portfolio.getId(), getCurrentUser(), t.getTicker(), t.getShares(), stockPrice);
+        } catch (ResourceNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (TradeRejectedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Portfolio is busy with another trade, try again");
+        } catch (UpstreamRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        } catch (UncheckedIOException e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(JOURNAL_FAILED);
         }
 
-        t.setTransactionDate(Timestamp.from(Instant.now()));
-        t.setUser(getCurrentUser());
-        t.setPortfolio(portfolio);
-        transactionRepository.save(t);
-
         return ResponseEntity.ok("Purchase successful");
     }
 
     @io.swagger.v3.oas.annotations.parameters.RequestBody(content = @Content(schema = @Schema(implementation = StockDocs.class)))
     @ApiResponses({
             @ApiResponse(responseCode = "200", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Sale successful"))),
+            @ApiResponse(responseCode = "400", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Invalid symbol: BRK B"))),
             @ApiResponse(responseCode = "404", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Portfolio not found | Stock not owned"))),
-            @ApiResponse(responseCode = "403", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Insufficient shares | Cannot access this portfolio"))),
+            @ApiResponse(responseCode = "403", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Insufficient shares | Shares must be positive | Cannot access this portfolio"))),
+            @ApiResponse(responseCode = "409", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Portfolio is busy with another trade, try again | A request with this Idempotency-Key is still in progress"))),
+            @ApiResponse(responseCode = "422", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Idempotency-Key was already used for a different request"))),
+            @ApiResponse(responseCode = "503", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "FINNHUB request quota exhausted, try again shortly | Trades are waiting on the database, try again shortly | Trade could not be confirmed, check the portfolio before trying again"))),
     })
     @PostMapping("/sell")
-    public ResponseEntity<String> sell(@RequestBody Transaction t, @RequestParam int portfolioId) {
-        if (USE_TIME && FinnHub.getInstance().isMarketClosed()) {
+    public ResponseEntity<?> sell(@RequestBody Transaction t, @RequestParam int portfolioId,
+                                  @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return idempotencyCache.execute(idempotencyKey, getCurrentUsername(), "sell " + portfolioId + " " + t.getTicker() + " " + t.getShares(),
+                () -> executeSell(t, portfolioId));
+    }
+
+    private ResponseEntity<?> executeSell(Transaction t, int portfolioId) {
+        if (USE_TIME && !MarketCalendar.getInstance().isOpen(Instant.now())) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body("The market is not open");
         }
 
@@ -155,53 +188,288 @@ public class StockController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
         }
 
-        Stock stock = stockRepository.findByPortfolioAndTicker(portfolio, t.getTicker());
-        if (stock == null) {
+        // Checked again inside the trade; this just avoids spending quote quota on a ticker not held.
+        // The journal's holdings can be ahead of the database, so then only the trade can tell
+        if (!tradeJournal.isEnabled() && portfolio.getPosition(t.getTicker()) == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Stock not owned");
         }
 
-        int ownedShares = stock.getShares();
-        if (ownedShares < t.getShares()) {
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("Insufficient shares");
+        double stockPrice;
+        try {
+            stockPrice = getPrice(t.getTicker());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        } catch (UpstreamRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        }
+
+        try {
+            tradeService.sell(portfolio.getId(), getCurrentUser(), t.getTicker(), t.getShares(), stockPrice);
+        } catch (ResourceNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (TradeRejectedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body("Portfolio is busy with another trade, try again");
+        } catch (UpstreamRejectedException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+        } catch (UncheckedIOException e) {
+            e.printStackTrace();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(JOURNAL_FAILED);
         }
 
-        double stockPrice = getPrice(t.getTicker());
-        t.setPrice(stockPrice);
+        return ResponseEntity.ok("Sale successful");
+    }
+
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = OrderResultDTO.class)))),
+            @ApiResponse(responseCode = "400", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "No orders given"))),
+            @ApiResponse(responseCode = "404", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Portfolio not found"))),
+            @ApiResponse(responseCode = "403", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Insufficient funds | Cannot access this portfolio"))),
+            @ApiResponse(responseCode = "409", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Portfolio is busy with another trade, try again | A request with this Idempotency-Key is still in progress"))),
+            @ApiResponse(responseCode = "422", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Idempotency-Key was already used for a different request"))),
+            @ApiResponse(responseCode = "503", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "FINNHUB request quota exhausted, try again shortly | Trades are waiting on the database, try again shortly | Trade could not be confirmed, check the portfolio before trying again"))),
+    })
+    @PostMapping("/orders")
+    public ResponseEntity<?> orders(@RequestBody List<OrderDTO> orders, @RequestParam int portfolioId,
+                                    @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return idempotencyCache.execute(idempotencyKey, getCurrentUsername(), "orders " + portfolioId + " " + describe(orders),
+                () -> executeOrders(orders, portfolioId));
+    }
+
+    private ResponseEntity<?> executeOrders(List<OrderDTO> orders, int portfolioId) {
+        if (USE_TIME && !MarketCalendar.getInstance().isOpen(Instant.now())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("The market is not open");
+        }
+        if (orders == null || orders.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("No orders given");
+        }
 
-        double value = t.getShares() * stockPrice;
-        portfolio.setCash(portfolio.getCash() + value);
-        portfolioRepository.save(portfolio);
+        Portfolio portfolio;
+        try {
+            portfolio = getPortfolio(portfolioId);
+        } catch (ResourceNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        }
 
-        if (ownedShares == t.getShares()) {
-            stockRepository.delete(stock);
-        } else {
-            stock.setShares(ownedShares - t.getShares());
-            stockRepository.save(stock);
+        // Malformed orders are rejected on their own; the rest go through as one batch
+        OrderResultDTO[] results = new OrderResultDTO[orders.size()];
+        List<OrderDTO> valid = new ArrayList<>();
+        for (int i = 0; i < orders.size(); i++) {
+            OrderDTO order = orders.get(i);
+            String problem = validate(order);
+            if (problem != null) {
+                results[i] = OrderResultDTO.rejected(order, problem);
+            } else {
+                valid.add(normalize(order));
+            }
         }
 
-        t.setTransactionDate(Timestamp.from(Instant.now()));
-        t.setUser(getCurrentUser());
-        t.setShares(-t.getShares());
-        t.setPortfolio(portfolio);
-        transactionRepository.save(t);
+        if (!valid.isEmpty()) {
+            Map<String, Double> prices = new HashMap<>();
+            List<OrderResultDTO> executed;
+            try {
+                Set<String> tickers = valid.stream().map(OrderDTO::getTicker).collect(Collectors.toSet());
+                marketData.quotes(tickers, RequestPriority.TRADE).forEach((ticker, quote) -> prices.put(ticker, quote.getCurrentPrice()));
+                executed = tradeService.executeOrders(portfolio.getId(), getCurrentUser(), valid, prices, false);
+            } catch (UpstreamRejectedException e) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+            } catch (ResourceNotFoundException e) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+            } catch (TradeRejectedException e) {
+                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+            } catch (OptimisticLockingFailureException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body("Portfolio is busy with another trade, try again");
+            } catch (UncheckedIOException e) {
+                e.printStackTrace();
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(JOURNAL_FAILED);
+            }
 
-        return ResponseEntity.ok("Sale successful");
+            int next = 0;
+            for (int i = 0; i < results.length; i++) {
+                if (results[i] == null) {
+                    results[i] = executed.get(next++);
+                }
+            }
+        }
+        return ResponseEntity.ok(Arrays.asList(results));
+    }
+
+    @io.swagger.v3.oas.annotations.parameters.RequestBody(content = @Content(schema = @Schema(implementation = OrderDTO.class)))
+    @ApiResponses({
+            @ApiResponse(responseCode = "202", content = @Content(mediaType = "application/json", schema = @Schema(implementation = OrderStatusDTO.class))),
+            @ApiResponse(responseCode = "400", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Shares must be positive"))),
+            @ApiResponse(responseCode = "404", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Portfolio not found"))),
+            @ApiResponse(responseCode = "403", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Cannot access this portfolio"))),
+            @ApiResponse(responseCode = "409", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "A request with this Idempotency-Key is still in progress"))),
+            @ApiResponse(responseCode = "422", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Idempotency-Key was already used for a different request"))),
+            @ApiResponse(responseCode = "503", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Too many orders queued, try again shortly"))),
+    })
+    @PostMapping("/orders/async")
+    public ResponseEntity<?> submitOrder(@RequestBody OrderDTO order, @RequestParam int portfolioId,
+                                         @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        return idempotencyCache.execute(idempotencyKey, getCurrentUsername(), "async " + portfolioId + " " + describe(List.of(order)),
+                () -> queueOrder(order, portfolioId));
+    }
+
+    private ResponseEntity<?> queueOrder(OrderDTO order, int portfolioId) {
+        if (USE_TIME && !MarketCalendar.getInstance().isOpen(Instant.now())) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body("The market is not open");
+        }
+        String problem = validate(order);
+        if (problem != null) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(problem);
+        }
+
+        Portfolio portfolio;
+        try {
+            portfolio = getPortfolio(portfolioId);
+        } catch (ResourceNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (AccessDeniedException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(e.getMessage());
+        }
+
+        long id = orderPipeline.submit(portfolio.getId(), portfolio.getUser(), normalize(order));
+        if (id < 0) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Too many orders queued, try again shortly");
+        }
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(new OrderStatusDTO(id, "queued", null));
     }
 
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(implementation = OrderStatusDTO.class))),
+            @ApiResponse(responseCode = "404", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Order not found")))
+    })
+    @GetMapping("/orders/{id}")
+    public CompletableFuture<ResponseEntity<?>> orderStatus(@PathVariable long id,
+                                                            @RequestParam(required = false, defaultValue = "0") long waitMs) {
+        User user = getCurrentUser();
+        CompletableFuture<OrderResultDTO> completion = orderPipeline.completion(id, user);
+        if (completion == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND).body("Order not found"));
+        }
+        if (waitMs <= 0 || completion.isDone()) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok(orderPipeline.status(id, user)));
+        }
+        // Long poll: answer as soon as the order completes, or with its queued state after waitMs
+        return completion.copy()
+                .completeOnTimeout(null, Math.min(waitMs, MAX_ORDER_WAIT_MS), TimeUnit.MILLISECONDS)
+                .handle((result, error) -> ResponseEntity.ok(orderPipeline.status(id, user)));
+    }
+
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = {
+                    @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = DayStats.class))),
+                    @Content(mediaType = "application/vnd.stockdojo.price-series", schema = @Schema(type = "string", format = "binary"))
+            }),
+            @ApiResponse(responseCode = "400", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Unknown resolution: hour (expected day, week, month or year)")))
+    })
     @GetMapping("/historical")
-    public List<DayStats> getHistorical(@RequestParam String symbol) {
-        return FMP.getInstance().search(symbol);
+    public ResponseEntity<?> getHistorical(@RequestParam String symbol,
+                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                           @RequestParam(required = false, defaultValue = "day") String resolution,
+                                           @RequestParam(required = false) Integer maxPoints) {
+        try {
+            PriceSeries series = marketData.history(symbol, Resolution.parse(resolution)).slice(from, to);
+            if (maxPoints != null) {
+                series = Lttb.downsample(series, maxPoints);
+            }
+            return ResponseEntity.ok(series);
+        } catch (IllegalArgumentException e) {
+            // Labelled explicitly, or a request that accepts the binary series gets the text under that type
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+        }
     }
 
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", schema = @Schema(type = "array", example = "[{\"date\": \"2024-11-01\", \"value\": 226.31}]"))),
+            @ApiResponse(responseCode = "400", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Unknown indicator: vwap (expected sma, ema, rsi, macd or bollinger)")))
+    })
+    @GetMapping("/indicators")
+    public ResponseEntity<?> getIndicator(@RequestParam String symbol,
+                                          @RequestParam String indicator,
+                                          @RequestParam(required = false) Integer period,
+                                          @RequestParam(required = false) Integer fast,
+                                          @RequestParam(required = false) Integer slow,
+                                          @RequestParam(required = false) Integer signal,
+                                          @RequestParam(required = false) Double width,
+                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                          @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            IndicatorEngine.Spec spec = IndicatorEngine.Spec.parse(indicator, period, fast, slow, signal, width);
+            return ResponseEntity.ok(marketData.indicator(symbol, spec).slice(from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).contentType(MediaType.TEXT_PLAIN).body(e.getMessage());
+        }
+    }
+
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", content = @Content(mediaType = "application/json", array = @ArraySchema(schema = @Schema(implementation = Recommendation.class)))),
+            @ApiResponse(responseCode = "400", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Invalid symbol: BRK B")))
+    })
     @GetMapping("/recommendations")
-    public List<Recommendation> recommendations(@RequestParam String symbol) {
-        return FinnHub.getInstance().recommendations(symbol);
+    public ResponseEntity<?> recommendations(@RequestParam String symbol) {
+        try {
+            return ResponseEntity.ok(marketData.recommendations(symbol));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+        }
     }
 
-    private User getCurrentUser() {
+    /**
+     * Why {@code order} cannot be executed as sent, or null if it is well formed.
+     */
+    private static String validate(OrderDTO order) {
+        if (order == null) {
+            return "Missing order";
+        }
+        String side = order.getSide() == null ? "" : order.getSide().toLowerCase(Locale.ROOT);
+        if (order.getTicker() == null || order.getTicker().isBlank()) {
+            return "Missing ticker";
+        }
+        if (!Symbol.isValid(order.getTicker().strip())) {
+            return "Invalid ticker";
+        }
+        if (order.getShares() <= 0) {
+            return "Shares must be positive";
+        }
+        if (!side.equals("buy") && !side.equals("sell")) {
+            return "Side must be buy or sell";
+        }
+        return null;
+    }
+
+    private static OrderDTO normalize(OrderDTO order) {
+        return new OrderDTO(order.getTicker().strip().toUpperCase(Locale.ROOT), order.getShares(), order.getSide().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * The orders as text, to tell whether a reused Idempotency-Key was sent with the same ones.
+     */
+    private static String describe(List<OrderDTO> orders) {
+        if (orders == null) {
+            return "";
+        }
+        StringBuilder text = new StringBuilder();
+        for (OrderDTO order : orders) {
+            text.append(order == null ? null : order.getSide()).append(' ')
+                    .append(order == null ? null : order.getTicker()).append(' ')
+                    .append(order == null ? 0 : order.getShares()).append(';');
+        }
+        return text.toString();
+    }
+
+    private String getCurrentUsername() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        String username = authentication.getName();
-        return userRepository.findByUsername(username);
+        return authentication.getName();
+    }
+
+    private User getCurrentUser() {
+        return userRepository.findByUsername(getCurrentUsername());
     }
 
     private Portfolio getPortfolio(int id) throws ResourceNotFoundException, AccessDeniedException {
@@ -216,7 +484,6 @@ public class StockController {
     }
 
     private double getPrice(String ticker) {
-        FinnHub fh = FinnHub.getInstance();
-        return fh.quote(ticker).getCurrentPrice();
+        return marketData.quote(ticker, RequestPriority.TRADE).getCurrentPrice();
     }
 }
@@ -1,8 +1,49 @@
 package cs309.stocks.Stocks;
 
-import cs309.stocks.Portfolios.Portfolio;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
+
+/**
+ * Positions are changed with single statements on the (portfolio_id, ticker) index rather than read,
+ * modified and saved, so two trades can never leave duplicate rows or lose each other's shares.
+ */
 public interface StockRepository extends JpaRepository<Stock, Integer> {
-    Stock findByPortfolioAndTicker(Portfolio portfolio, String ticker);
+    /**
+     * How many positions each ticker has, as (ticker, count) rows.
+     */
+    @Query("select upper(s.ticker), count(s) from Stock s group by upper(s.ticker)")
+    List<Object[]> countPositionsByTicker();
+
+    /**
+     * Adds {@code shares} to the position, opening it if the portfolio has none.
+     *
+     * @return 1 if the position was opened, 2 if an existing one grew
+     */
+    @Modifying
+    @Query(value = "insert into stock (portfolio_id, ticker, shares, version) values (:portfolioId, :ticker, :shares, 0) " +
+            "on duplicate key update shares = shares + :shares, version = version + 1", nativeQuery = true)
+    int addShares(@Param("portfolioId") int portfolioId, @Param("ticker") String ticker, @Param("shares") int shares);
+
+    /**
+     * Takes {@code shares} from the position if it holds at least that many.
+     *
+     * @return 0 if there is no such position or it holds too few shares
+     */
+    @Modifying
+    @Query(value = "update stock set shares = shares - :shares, version = version + 1 " +
+            "where portfolio_id = :portfolioId and ticker = :ticker and shares >= :shares", nativeQuery = true)
+    int removeShares(@Param("portfolioId") int portfolioId, @Param("ticker") String ticker, @Param("shares") int shares);
+
+    /**
+     * Closes the position if its last share was sold.
+     *
+     * @return 1 if it was closed
+     */
+    @Modifying
+    @Query(value = "delete from stock where portfolio_id = :portfolioId and ticker = :ticker and shares = 0", nativeQuery = true)
+    int deleteIfEmpty(@Param("portfolioId") int portfolioId, @Param("ticker") String ticker);
 }
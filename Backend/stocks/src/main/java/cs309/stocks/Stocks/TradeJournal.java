@@ -0,0 +1,469 @@
+package cs309.stocks.Stocks;
+
+import cs309.stocks.Exceptions.ResourceNotFoundException;
+import cs309.stocks.Exceptions.UpstreamRejectedException;
+import cs309.stocks.Portfolios.Portfolio;
+import cs309.stocks.Portfolios.PortfolioRepository;
+import cs309.stocks.Users.User;
+import cs309.stocks.api.Settings;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Optional write-behind path for trades, turned on with TRADE_JOURNAL_ENABLED.
+ * <p>
+ * A trade is checked against the portfolio's cash and holdings in memory, written to the
+ * {@link TradeLog} and acknowledged as soon as its record has been synced to disk, without waiting for
+ * MySQL. A flusher thread applies the journal to the database in the background, TRADE_JOURNAL_FLUSH_BATCH
+ * records per transaction: one batched update of each portfolio's cash, one batched upsert of each
+ * position and one batched insert of the {@link cs309.stocks.Transactions.Transaction} rows, all
+ * with the {@link JournalCheckpoint}. Records the database had not caught up with when the server
+ * stopped are applied at startup, before any request is served.
+ * <p>
+ * A portfolio's state is held in memory only while some of its trades are still waiting to be applied,
+ * and read from the database again afterwards. Portfolio and transaction reads can lag trades by the
+ * flush interval. Cash set outside of trades goes through {@link #runSettled}, so it never races with
+ * that state. While the database is unreachable, trades are taken until TRADE_JOURNAL_MAX_UNAPPLIED
+ * records are waiting for it.
+ */
+@Component
+public class TradeJournal {
+    private static final String UPDATE_CASH = "update portfolio set cash = cash + ?, version = version + 1 where id = ?";
+    private static final String UPSERT_POSITION = "insert into stock (portfolio_id, ticker, shares, version) values (?, ?, ?, 0) " +
+            "on duplicate key update shares = shares + ?, version = version + 1";
+    private static final String DELETE_EMPTY_POSITION = "delete from stock where portfolio_id = ? and ticker = ? and shares = 0";
+    private static final String INSERT_TRANSACTION = "insert into transaction (ticker, price, shares, transaction_date, user_id, portfolio_id) values (?, ?, ?, ?, ?, ?)";
+    private static final String READ_CHECKPOINT = "select applied_sequence from journal_checkpoint where id = 1";
+    private static final String WRITE_CHECKPOINT = "insert into journal_checkpoint (id, applied_sequence) values (1, ?) " +
+            "on duplicate key update applied_sequence = ?";
+
+    @Autowired
+    private PortfolioRepository portfolioRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private HeldTickers heldTickers;
+
+    private final boolean enabled = Boolean.parseBoolean(Settings.getString("TRADE_JOURNAL_ENABLED", "false"));
+    private final int batchSize = Settings.getInt("TRADE_JOURNAL_FLUSH_BATCH", 1000);
+    private final long flushMillis = Settings.getLong("TRADE_JOURNAL_FLUSH_MS", 20);
+    private final int maxUnapplied = Settings.getInt("TRADE_JOURNAL_MAX_UNAPPLIED", 100000);
+    private final long settleMillis = Settings.getLong("TRADE_JOURNAL_SETTLE_MS", 10000);
+    private TradeLog log;
+    private final Object[] locks = new Object[64];
+    private final Object appendLock = new Object();
+    private final Map<Integer, Account> accounts = new ConcurrentHashMap<>();
+    private final BlockingQueue<Pending> unapplied = new LinkedBlockingQueue<>();
+
+    private final AtomicLong journaled = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong backedUp = new AtomicLong();
+
+    public TradeJournal() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        log = new TradeLog(Path.of(Settings.getString("TRADE_JOURNAL_DIR", "trade-journal")),
+                Settings.getInt("TRADE_JOURNAL_SEGMENT_MB", 64) << 20);
+        Long checkpoint = jdbcTemplate.query(READ_CHECKPOINT, rs -> rs.next() ? rs.getLong(1) : 0L);
+        try {
+            List<TradeLog.Entry> entries = log.open(checkpoint);
+            for (int from = 0; from < entries.size(); from += batchSize) {
+                apply(entries.subList(from, Math.min(entries.size(), from + batchSize)));
+            }
+            replayed.set(entries.size());
+            if (!entries.isEmpty()) {
+                log.release(entries.get(entries.size() - 1).sequence());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Thread flusher = new Thread(this::flushLoop, "trade-journal-flush");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Runs a trade against the portfolio's current state and journals the fills it makes. Trades on one
+     * portfolio run one at a time; if {@code trade} throws, or its fills cannot be written and synced,
+     * none of its fills are kept.
+     *
+     * @return what {@code trade} returned, once its fills are on disk
+     * @throws ResourceNotFoundException  if there is no such portfolio
+     * @throws UpstreamRejectedException if too many trades are still waiting for the database
+     * @throws UncheckedIOException       if the journal could not be written or synced
+     */
+    public <T> T trade(int portfolioId, User user, Function<TradeService.Book, T> trade) {
+        if (unapplied.size() >= maxUnapplied) {
+            backedUp.incrementAndGet();
+            throw new UpstreamRejectedException("Trades are waiting on the database, try again shortly");
+        }
+        Object lock = locks[Math.floorMod(portfolioId, locks.length)];
+        Account account;
+        List<Fill> fills;
+        List<TradeLog.Entry> entries;
+        T result;
+        synchronized (lock) {
+            account = accounts.get(portfolioId);
+            if (account == null) {
+                account = load(portfolioId);
+            }
+            try {
+                result = trade.apply(account);
+            } catch (RuntimeException e) {
+                account.rollback(0);
+                throw e;
+            }
+            if (account.staged.isEmpty()) {
+                return result;
+            }
+
+            long now = System.currentTimeMillis();
+            List<TradeLog.Entry> records = account.staged.stream()
+                    .map(fill -> new TradeLog.Entry(0, portfolioId, user.getId(), fill.ticker, fill.shares, fill.price, now))
+                    .toList();
+            try {
+                synchronized (appendLock) {
+                    entries = log.append(records);
+                    for (int i = 0; i < entries.size(); i++) {
+                        unapplied.add(new Pending(entries.get(i), account.staged.get(i).positionChange()));
+                    }
+                }
+            } catch (IOException e) {
+                account.rollback(0);
+                throw new UncheckedIOException(e);
+            }
+            fills = List.copyOf(account.staged);
+            account.staged.clear();
+            account.pending += fills.size();
+            accounts.put(portfolioId, account);
+            journaled.addAndGet(fills.size());
+        }
+
+        try {
+            log.awaitDurable(entries.get(entries.size() - 1).sequence());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for the trade journal", e);
+        } catch (UncheckedIOException e) {
+            // The flusher never applies records past the last sync, so these fills are gone for good
+            synchronized (lock) {
+                account.undo(fills);
+                account.pending -= fills.size();
+                if (account.pending == 0) {
+                    accounts.remove(portfolioId);
+                    lock.notifyAll();
+                }
+            }
+            lost.addAndGet(fills.size());
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Runs a change made to a portfolio outside of trades, such as setting its cash, once all of its
+     * journaled trades are in the database. Its trades wait for the change, and the next one reads the
+     * portfolio from the database again.
+     *
+     * @throws UpstreamRejectedException if its trades did not reach the database within TRADE_JOURNAL_SETTLE_MS
+     */
+    public void runSettled(int portfolioId, Runnable change) {
+        if (!enabled) {
+            change.run();
+            return;
+        }
+        Object lock = locks[Math.floorMod(portfolioId, locks.length)];
+        synchronized (lock) {
+            long deadline = System.currentTimeMillis() + settleMillis;
+            while (accounts.containsKey(portfolioId)) {
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    throw new UpstreamRejectedException("Trades on this portfolio are waiting on the database, try again shortly");
+                }
+                try {
+                    lock.wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for the trade journal", e);
+                }
+            }
+            change.run();
+        }
+    }
+
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("journaled", journaled.get());
+        metrics.put("applied", applied.get());
+        metrics.put("unapplied", unapplied.size());
+        metrics.put("accounts", accounts.size());
+        metrics.put("fsyncs", log == null ? 0 : log.getSyncs());
+        metrics.put("segments", log == null ? 0 : log.getSegments());
+        metrics.put("flushes", flushes.get());
+        metrics.put("failedFlushes", failedFlushes.get());
+        metrics.put("replayed", replayed.get());
+        metrics.put("lost", lost.get());
+        metrics.put("backedUp", backedUp.get());
+        return metrics;
+    }
+
+    private Account load(int portfolioId) {
+        Portfolio portfolio = portfolioRepository.findById(portfolioId);
+        if (portfolio == null) {
+            throw new ResourceNotFoundException("Portfolio not found");
+        }
+        Account account = new Account(portfolio.getCash());
+        for (Stock stock : portfolio.getPositions().values()) {
+            account.shares.put(stock.getTicker(), stock.getShares());
+        }
+        return account;
+    }
+
+    private void flushLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (true) {
+            try {
+                if (batch.isEmpty()) {
+                    batch.add(unapplied.take());
+                }
+                // Let more trades arrive, so they go to the database together
+                Thread.sleep(flushMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            unapplied.drainTo(batch, batchSize - batch.size());
+            // A record not yet on disk may still be lost, and its trade undone, so it waits for the next sync
+            long synced = log.getSynced();
+            int durable = 0;
+            while (durable < batch.size() && batch.get(durable).entry().sequence() <= synced) {
+                durable++;
+            }
+            if (durable == 0) {
+                if (log.isFailed()) {
+                    // Never synced and never will be: their trades failed and took their fills back
+                    batch.clear();
+                }
+                continue;
+            }
+            List<Pending> ready = batch.subList(0, durable);
+            List<TradeLog.Entry> entries = ready.stream().map(Pending::entry).toList();
+            while (true) {
+                try {
+                    apply(entries);
+                    break;
+                } catch (RuntimeException e) {
+                    // Never drop a trade: keep trying until the database takes it
+                    e.printStackTrace();
+                    failedFlushes.incrementAndGet();
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+            settle(ready);
+            ready.clear();
+        }
+    }
+
+    /**
+     * Applies journal records to the database in one transaction, dropping those whose portfolio has
+     * been deleted since.
+     */
+    private void apply(List<TradeLog.Entry> entries) {
+        transactionTemplate.executeWithoutResult(status -> {
+            String ids = entries.stream().map(e -> String.valueOf(e.portfolioId())).distinct().collect(Collectors.joining(","));
+            Set<Integer> portfolios = new HashSet<>(jdbcTemplate.queryForList("select id from portfolio where id in (" + ids + ")", Integer.class));
+
+            Map<Integer, Double> cash = new LinkedHashMap<>();
+            Map<Position, Integer> shares = new LinkedHashMap<>();
+            List<TradeLog.Entry> live = new ArrayList<>(entries.size());
+            for (TradeLog.Entry entry : entries) {
+                if (portfolios.contains(entry.portfolioId())) {
+                    cash.merge(entry.portfolioId(), -entry.shares() * entry.price(), Double::sum);
+                    shares.merge(new Position(entry.portfolioId(), entry.ticker()), entry.shares(), Integer::sum);
+                    live.add(entry);
+                }
+            }
+            shares.values().removeIf(delta -> delta == 0);
+            long last = entries.get(entries.size() - 1).sequence();
+
+            if (live.isEmpty()) {
+                jdbcTemplate.update(WRITE_CHECKPOINT, last, last);
+                return;
+            }
+            jdbcTemplate.batchUpdate(UPDATE_CASH, cash.entrySet(), cash.size(), (statement, change) -> {
+                statement.setDouble(1, change.getValue());
+                statement.setInt(2, change.getKey());
+            });
+            if (!shares.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPSERT_POSITION, shares.entrySet(), shares.size(), (statement, change) -> {
+                    statement.setInt(1, change.getKey().portfolioId());
+                    statement.setString(2, change.getKey().ticker());
+                    statement.setInt(3, change.getValue());
+                    statement.setInt(4, change.getValue());
+                });
+            }
+            List<Position> reduced = shares.entrySet().stream().filter(change -> change.getValue() < 0).map(Map.Entry::getKey).toList();
+            if (!reduced.isEmpty()) {
+                jdbcTemplate.batchUpdate(DELETE_EMPTY_POSITION, reduced, reduced.size(), (statement, position) -> {
+                    statement.setInt(1, position.portfolioId());
+                    statement.setString(2, position.ticker());
+                });
+            }
+            jdbcTemplate.batchUpdate(INSERT_TRANSACTION, live, live.size(), (statement, entry) -> {
+                statement.setString(1, entry.ticker());
+                statement.setDouble(2, entry.price());
+                statement.setInt(3, entry.shares());
+                statement.setTimestamp(4, new Timestamp(entry.time()));
+                statement.setInt(5, entry.userId());
+                statement.setInt(6, entry.portfolioId());
+            });
+            jdbcTemplate.update(WRITE_CHECKPOINT, last, last);
+        });
+        flushes.incrementAndGet();
+        applied.addAndGet(entries.size());
+    }
+
+    /**
+     * Forgets the in-memory state of portfolios with nothing left to apply, and the journal segments
+     * the database has caught up with.
+     */
+    private void settle(List<Pending> batch) {
+        for (Pending pending : batch) {
+            int portfolioId = pending.entry().portfolioId();
+            Object lock = locks[Math.floorMod(portfolioId, locks.length)];
+            synchronized (lock) {
+                Account account = accounts.get(portfolioId);
+                if (account != null && --account.pending == 0) {
+                    accounts.remove(portfolioId);
+                    lock.notifyAll();
+                }
+            }
+        }
+        try {
+            log.release(batch.get(batch.size() - 1).entry().sequence());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (Pending pending : batch) {
+            if (pending.positionChange() > 0) {
+                heldTickers.opened(pending.entry().ticker());
+            } else if (pending.positionChange() < 0) {
+                heldTickers.closed(pending.entry().ticker());
+            }
+        }
+    }
+
+    private record Position(int portfolioId, String ticker) {
+    }
+
+    /**
+     * @param positionChange 1 if the record opened a position, -1 if it closed one, otherwise 0
+     */
+    private record Pending(TradeLog.Entry entry, int positionChange) {
+    }
+
+    private record Fill(String ticker, int shares, double price, int sharesBefore) {
+        int positionChange() {
+            return sharesBefore == 0 ? 1 : sharesBefore + shares == 0 ? -1 : 0;
+        }
+    }
+
+    /**
+     * A portfolio's cash and holdings including trades not yet in the database. Fills made by the trade
+     * in progress are staged, so they can be undone if it fails.
+     */
+    private static class Account implements TradeService.Book {
+        private double cash;
+        private final Map<String, Integer> shares = new HashMap<>();
+        private final List<Fill> staged = new ArrayList<>();
+        private int pending;
+
+        Account(double cash) {
+            this.cash = cash;
+        }
+
+        @Override
+        public double getCash() {
+            return cash;
+        }
+
+        @Override
+        public int getShares(String ticker) {
+            return shares.getOrDefault(ticker, 0);
+        }
+
+        @Override
+        public void fill(String ticker, int shares, double price) {
+            int before = getShares(ticker);
+            staged.add(new Fill(ticker, shares, price, before));
+            setShares(ticker, before + shares);
+            cash -= shares * price;
+        }
+
+        /**
+         * Undoes the staged fills from index {@code from} on.
+         */
+        void rollback(int from) {
+            List<Fill> undone = staged.subList(from, staged.size());
+            undo(undone);
+            undone.clear();
+        }
+
+        /**
+         * Takes back fills, newest first. Later trades may have changed the holdings since, so each fill
+         * is reversed as a change rather than by restoring what it started from.
+         */
+        void undo(List<Fill> fills) {
+            for (int i = fills.size() - 1; i >= 0; i--) {
+                Fill fill = fills.get(i);
+                setShares(fill.ticker, getShares(fill.ticker) - fill.shares);
+                cash += fill.shares * fill.price;
+            }
+        }
+
+        private void setShares(String ticker, int count) {
+            if (count == 0) {
+                shares.remove(ticker);
+            } else {
+                shares.put(ticker, count);
+            }
+        }
+    }
+}
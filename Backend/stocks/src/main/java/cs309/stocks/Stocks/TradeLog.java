@@ -0,0 +1,304 @@
+package cs309.stocks.Stocks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of trades in memory-mapped segment files.
+ * <p>
+ * Each record is written straight into the current segment's mapping and gets the next sequence
+ * number. A single sync thread forces whatever has been written since its last pass, so trades that
+ * arrive while one fsync is running share the next one; {@link #awaitDurable} returns once a record is
+ * on disk. After a failed fsync the log takes no more records. A segment is named after its first sequence number and deleted once every record in it has
+ * been applied to the database.
+ * <pre>
+ *   length     int      bytes from sequence to ticker; 0 marks the end of the segment
+ *   sequence   long
+ *   portfolio  int
+ *   user       int
+ *   shares     int      negative for a sale
+ *   price      double
+ *   time       long     epoch milliseconds
+ *   ticker     short length, then UTF-8 bytes
+ *   checksum   int      CRC-32 of the bytes from sequence to ticker
+ * </pre>
+ * A record cut short by a crash fails its checksum, and reading stops there.
+ */
+public class TradeLog {
+    private static final Pattern SEGMENT = Pattern.compile("trades-(\\d{20})\\.journal");
+    private static final int FIXED_BYTES = Long.BYTES + 3 * Integer.BYTES + Double.BYTES + Long.BYTES + Short.BYTES;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment current;
+    private long nextSequence = 1;
+    private long appended;
+    private long synced;
+    private IOException syncFailure;
+
+    private long syncs;
+
+    public TradeLog(Path directory, int segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+    }
+
+    public record Entry(long sequence, int portfolioId, int userId, String ticker, int shares, double price, long time) {
+    }
+
+    /**
+     * Reads the existing segments, starts a new one for appends and the sync thread.
+     *
+     * @return the records after {@code applied}, in order
+     */
+    public synchronized List<Entry> open(long applied) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> paths;
+        try (Stream<Path> files = Files.list(directory)) {
+            paths = files.filter(p -> SEGMENT.matcher(p.getFileName().toString()).matches()).sorted().toList();
+        }
+        List<Entry> unapplied = new ArrayList<>();
+        long last = applied;
+        for (Path path : paths) {
+            Matcher name = SEGMENT.matcher(path.getFileName().toString());
+            name.matches();
+            Segment segment = new Segment(path, Long.parseLong(name.group(1)), map(path, Math.max(Files.size(path), FIXED_BYTES)));
+            segments.add(segment);
+            last = Math.max(last, segment.firstSequence - 1);
+            for (Entry entry : segment.read()) {
+                last = Math.max(last, entry.sequence());
+                if (entry.sequence() > applied) {
+                    unapplied.add(entry);
+                }
+            }
+        }
+        nextSequence = last + 1;
+        appended = last;
+        synced = last;
+        roll();
+
+        Thread syncer = new Thread(this::syncLoop, "trade-journal-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+        return unapplied;
+    }
+
+    /**
+     * Writes records into one segment, all of them or none, each durable once {@link #awaitDurable}
+     * returns for its sequence number. The sequence numbers of {@code records} are ignored.
+     *
+     * @return the records with their sequence numbers
+     * @throws IOException if nothing was written, including every append after a sync has failed
+     */
+    public synchronized List<Entry> append(List<Entry> records) throws IOException {
+        if (syncFailure != null) {
+            throw new IOException("Trade journal could not be synced", syncFailure);
+        }
+        List<byte[]> symbols = new ArrayList<>(records.size());
+        int bytes = Integer.BYTES;
+        for (Entry record : records) {
+            byte[] symbol = record.ticker().getBytes(StandardCharsets.UTF_8);
+            symbols.add(symbol);
+            bytes += Integer.BYTES + FIXED_BYTES + symbol.length + Integer.BYTES;
+        }
+        if (current.position + bytes > segmentBytes) {
+            if (bytes > segmentBytes) {
+                throw new IOException("Trade of " + records.size() + " records does not fit in a journal segment");
+            }
+            current.buffer.force();
+            roll();
+        }
+        List<Entry> entries = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            Entry record = records.get(i);
+            Entry entry = new Entry(nextSequence++, record.portfolioId(), record.userId(), record.ticker(), record.shares(), record.price(), record.time());
+            current.write(entry, symbols.get(i), FIXED_BYTES + symbols.get(i).length);
+            entries.add(entry);
+        }
+        if (!entries.isEmpty()) {
+            appended = entries.get(entries.size() - 1).sequence();
+            notifyAll();
+        }
+        return entries;
+    }
+
+    /**
+     * Blocks until the record with {@code sequence} has been forced to disk.
+     *
+     * @throws UncheckedIOException if forcing the journal failed
+     */
+    public synchronized void awaitDurable(long sequence) throws InterruptedException {
+        while (synced < sequence) {
+            if (syncFailure != null) {
+                throw new UncheckedIOException("Trade journal could not be synced", syncFailure);
+            }
+            wait();
+        }
+    }
+
+    /**
+     * Deletes the segments holding only records up to {@code applied}.
+     */
+    public synchronized void release(long applied) throws IOException {
+        while (segments.size() > 1 && segments.get(1).firstSequence - 1 <= applied) {
+            Files.deleteIfExists(segments.remove(0).path);
+        }
+    }
+
+    public synchronized long getAppended() {
+        return appended;
+    }
+
+    public synchronized long getSynced() {
+        return synced;
+    }
+
+    /**
+     * Whether a sync has failed, after which nothing past {@link #getSynced} will reach the disk.
+     */
+    public synchronized boolean isFailed() {
+        return syncFailure != null;
+    }
+
+    public synchronized long getSyncs() {
+        return syncs;
+    }
+
+    public synchronized int getSegments() {
+        return segments.size();
+    }
+
+    private void syncLoop() {
+        while (true) {
+            Segment segment;
+            int from;
+            int to;
+            long target;
+            synchronized (this) {
+                while (appended == synced) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                segment = current;
+                from = segment.syncedPosition;
+                to = segment.position;
+                target = appended;
+            }
+            // Segments are forced in full when they roll over, so only the current one can have unsynced records
+            IOException failure = null;
+            try {
+                segment.buffer.force(from, to - from);
+            } catch (UncheckedIOException e) {
+                failure = e.getCause();
+            }
+            synchronized (this) {
+                if (failure != null) {
+                    syncFailure = failure;
+                } else {
+                    segment.syncedPosition = Math.max(segment.syncedPosition, to);
+                    synced = Math.max(synced, target);
+                    syncs++;
+                }
+                notifyAll();
+                if (failure != null) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void roll() throws IOException {
+        Path path = directory.resolve(String.format("trades-%020d.journal", nextSequence));
+        // A segment left without a single whole record by the last run is started over
+        segments.removeIf(segment -> segment.path.equals(path));
+        Files.deleteIfExists(path);
+        current = new Segment(path, nextSequence, map(path, segmentBytes));
+        segments.add(current);
+    }
+
+    private static MappedByteBuffer map(Path path, long bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return buffer;
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long firstSequence;
+        private final MappedByteBuffer buffer;
+        private int position;
+        private int syncedPosition;
+
+        Segment(Path path, long firstSequence, MappedByteBuffer buffer) {
+            this.path = path;
+            this.firstSequence = firstSequence;
+            this.buffer = buffer;
+        }
+
+        void write(Entry entry, byte[] symbol, int length) {
+            int start = position + Integer.BYTES;
+            buffer.putLong(start, entry.sequence());
+            buffer.putInt(start + 8, entry.portfolioId());
+            buffer.putInt(start + 12, entry.userId());
+            buffer.putInt(start + 16, entry.shares());
+            buffer.putDouble(start + 20, entry.price());
+            buffer.putLong(start + 28, entry.time());
+            buffer.putShort(start + 36, (short) symbol.length);
+            buffer.put(start + 38, symbol);
+            buffer.putInt(start + length, checksum(start, length));
+            // The length goes in last, so a reader never sees a record that is only partly written
+            buffer.putInt(position, length);
+            position = start + length + Integer.BYTES;
+        }
+
+        List<Entry> read() {
+            List<Entry> entries = new ArrayList<>();
+            int limit = buffer.capacity();
+            while (position + Integer.BYTES <= limit) {
+                int length = buffer.getInt(position);
+                int start = position + Integer.BYTES;
+                // Compared without adding to length, which a damaged record can make anything
+                if (length < FIXED_BYTES || length > limit - start - Integer.BYTES
+                        || buffer.getInt(start + length) != checksum(start, length)) {
+                    break;
+                }
+                byte[] symbol = new byte[buffer.getShort(start + 36)];
+                if (FIXED_BYTES + symbol.length != length) {
+                    break;
+                }
+                buffer.get(start + 38, symbol);
+                entries.add(new Entry(buffer.getLong(start), buffer.getInt(start + 8), buffer.getInt(start + 12),
+                        new String(symbol, StandardCharsets.UTF_8), buffer.getInt(start + 16), buffer.getDouble(start + 20),
+                        buffer.getLong(start + 28)));
+                position = start + length + Integer.BYTES;
+            }
+            syncedPosition = position;
+            return entries;
+        }
+
+        private int checksum(int start, int length) {
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(start, length));
+            return (int) crc.getValue();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package cs309.stocks.Stocks;
+
+import cs309.stocks.Exceptions.ResourceNotFoundException;
+import cs309.stocks.Exceptions.TradeRejectedException;
+import cs309.stocks.Portfolios.Portfolio;
+import cs309.stocks.Portfolios.PortfolioRepository;
+import cs309.stocks.Transactions.Transaction;
+import cs309.stocks.Transactions.TransactionRepository;
+import cs309.stocks.Users.User;
+import cs309.stocks.api.Settings;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Runs each buy or sell as one database transaction: the cash change, the position change and the
+ * {@link Transaction} record commit together or not at all.
+ * <p>
+ * {@link Portfolio} and {@link Stock} are versioned, so when two trades on the same portfolio race (a
+ * double tap, two devices) only the first to commit wins; the other's commit fails and its whole trade
+ * is run again against the fresh rows, funds and share checks included, up to TRADE_MAX_ATTEMPTS
+ * times. Nothing is locked, so an uncontended trade costs the same as before.
+ * <p>
+ * Positions are changed in place by single upsert and conditional update statements, so a buy never
+ * reads the position first and concurrent buys of a new ticker end up in one row.
+ * <p>
+ * With the {@link TradeJournal} enabled, trades are checked and recorded there instead and reach the
+ * database shortly after.
+ */
+@Service
+public class TradeService {
+    @Autowired
+    private PortfolioRepository portfolioRepository;
+    @Autowired
+    private StockRepository stockRepository;
+    @Autowired
+    private TransactionRepository transactionRepository;
+    @Autowired
+    private HeldTickers heldTickers;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private TradeJournal journal;
+
+    private final int maxAttempts = Settings.getInt("TRADE_MAX_ATTEMPTS", 3);
+
+    /**
+     * Buys {@code shares} of {@code ticker} at {@code price} with the portfolio's cash.
+     *
+     * @throws TradeRejectedException if {@code shares} is not positive or the portfolio cannot afford it
+     * @throws OptimisticLockingFailureException if every attempt lost a race with another trade
+     */
+    public void buy(int portfolioId, User user, String ticker, int shares, double price) {
+        checkShares(shares);
+        String symbol = ticker.toUpperCase(Locale.ROOT);
+        if (journal.isEnabled()) {
+            journal.trade(portfolioId, user, book -> {
+                if (shares * price > book.getCash()) {
+                    throw new TradeRejectedException("Insufficient funds");
+                }
+                book.fill(symbol, shares, price);
+                return null;
+            });
+            return;
+        }
+        boolean opened = inTransaction(status -> {
+            Portfolio portfolio = loadPortfolio(portfolioId);
+            double cost = shares * price;
+            if (cost > portfolio.getCash()) {
+                throw new TradeRejectedException("Insufficient funds");
+            }
+            portfolio.setCash(portfolio.getCash() - cost);
+            portfolioRepository.save(portfolio);
+
+            record(portfolio, user, symbol, shares, price);
+            return stockRepository.addShares(portfolioId, symbol, shares) == 1;
+        });
+        if (opened) {
+            heldTickers.opened(symbol);
+        }
+    }
+
+    /**
+     * Sells {@code shares} of {@code ticker} at {@code price} into the portfolio's cash.
+     *
+     * @throws ResourceNotFoundException if the portfolio holds no {@code ticker}
+     * @throws TradeRejectedException    if {@code shares} is not positive or it holds fewer than {@code shares}
+     * @throws OptimisticLockingFailureException if every attempt lost a race with another trade
+     */
+    public void sell(int portfolioId, User user, String ticker, int shares, double price) {
+        checkShares(shares);
+        String symbol = ticker.toUpperCase(Locale.ROOT);
+        if (journal.isEnabled()) {
+            journal.trade(portfolioId, user, book -> {
+                int held = book.getShares(symbol);
+                if (held == 0) {
+                    throw new ResourceNotFoundException("Stock not owned");
+                }
+                if (held < shares) {
+                    throw new TradeRejectedException("Insufficient shares");
+                }
+                book.fill(symbol, -shares, price);
+                return null;
+            });
+            return;
+        }
+        boolean closed = inTransaction(status -> {
+            Portfolio portfolio = loadPortfolio(portfolioId);
+            if (stockRepository.removeShares(portfolioId, symbol, shares) == 0) {
+                if (portfolio.getPosition(symbol) == null) {
+                    throw new ResourceNotFoundException("Stock not owned");
+                }
+                throw new TradeRejectedException("Insufficient shares");
+            }
+            portfolio.setCash(portfolio.getCash() + shares * price);
+            portfolioRepository.save(portfolio);
+
+            record(portfolio, user, symbol, -shares, price);
+            return stockRepository.deleteIfEmpty(portfolioId, symbol) == 1;
+        });
+        if (closed) {
+            heldTickers.closed(symbol);
+        }
+    }
+
+    /**
+     * Applies a batch of orders to one portfolio in a single transaction. Orders are checked in turn
+     * against the positions as the earlier orders leave them, and any that cannot be filled are
+     * rejected individually.
+     *
+     * @param orders       orders with upper-case tickers, shares above zero and side "buy" or "sell"
+     * @param prices       price per ticker for every order
+     * @param cashPerOrder reject each buy the cash left at that point cannot pay for, rather than
+     *                     checking cash once for the whole batch (where sales can pay for purchases)
+     * @return one result per order, in order
+     * @throws TradeRejectedException if the filled orders together cost more than the portfolio's cash
+     * @throws OptimisticLockingFailureException if every attempt lost a race with another trade
+     */
+    public List<OrderResultDTO> executeOrders(int portfolioId, User user, List<OrderDTO> orders, Map<String, Double> prices,
+                                              boolean cashPerOrder) {
+        if (journal.isEnabled()) {
+            return journal.trade(portfolioId, user, book -> fillOrders(book, orders, prices, cashPerOrder));
+        }
+        List<String> opened = new ArrayList<>();
+        List<String> closed = new ArrayList<>();
+        List<OrderResultDTO> results = inTransaction(status -> {
+            opened.clear();
+            closed.clear();
+            Portfolio portfolio = loadPortfolio(portfolioId);
+            StagedBook book = new StagedBook(portfolio, user);
+            List<OrderResultDTO> filled = fillOrders(book, orders, prices, cashPerOrder);
+
+            portfolio.setCash(book.cash);
+            portfolioRepository.save(portfolio);
+            for (Map.Entry<String, Integer> change : book.changes.entrySet()) {
+                String ticker = change.getKey();
+                int delta = change.getValue();
+                if (delta > 0) {
+                    if (stockRepository.addShares(portfolioId, ticker, delta) == 1) {
+                        opened.add(ticker);
+                    }
+                } else if (delta < 0) {
+                    if (stockRepository.removeShares(portfolioId, ticker, -delta) == 0) {
+                        // Another trade sold these shares since the portfolio was read
+                        throw new ObjectOptimisticLockingFailureException(Stock.class, ticker);
+                    }
+                    if (stockRepository.deleteIfEmpty(portfolioId, ticker) == 1) {
+                        closed.add(ticker);
+                    }
+                }
+            }
+            transactionRepository.insertAll(book.transactions);
+            return filled;
+        });
+        opened.forEach(heldTickers::opened);
+        closed.forEach(heldTickers::closed);
+        return results;
+    }
+
+    /**
+     * A portfolio's cash and holdings as a trade sees them, whether they are read from the database or
+     * held by the {@link TradeJournal}.
+     */
+    interface Book {
+        double getCash();
+
+        int getShares(String ticker);
+
+        /**
+         * Records a fill; {@code shares} is negative for a sale.
+         */
+        void fill(String ticker, int shares, double price);
+    }
+
+    private static List<OrderResultDTO> fillOrders(Book book, List<OrderDTO> orders, Map<String, Double> prices, boolean cashPerOrder) {
+        List<OrderResultDTO> results = new ArrayList<>(orders.size());
+        for (OrderDTO order : orders) {
+            String ticker = order.getTicker();
+            double price = prices.get(ticker);
+            int shares = book.getShares(ticker);
+            int signed;
+            if ("buy".equals(order.getSide())) {
+                if (cashPerOrder && order.getShares() * price > book.getCash()) {
+                    results.add(OrderResultDTO.rejected(order, "Insufficient funds"));
+                    continue;
+                }
+                signed = order.getShares();
+            } else if (shares == 0) {
+                results.add(OrderResultDTO.rejected(order, "Stock not owned"));
+                continue;
+            } else if (shares < order.getShares()) {
+                results.add(OrderResultDTO.rejected(order, "Insufficient shares"));
+                continue;
+            } else {
+                signed = -order.getShares();
+            }
+            book.fill(ticker, signed, price);
+            results.add(OrderResultDTO.filled(order, price));
+        }
+        if (book.getCash() < 0) {
+            throw new TradeRejectedException("Insufficient funds");
+        }
+        return results;
+    }
+
+    /**
+     * Collects a batch's fills against a portfolio read from the database, to be written in one go.
+     */
+    private static class StagedBook implements Book {
+        private final Portfolio portfolio;
+        private final User user;
+        private final Timestamp now = Timestamp.from(Instant.now());
+        private final Map<String, Integer> held = new HashMap<>();
+        private final Map<String, Integer> changes = new LinkedHashMap<>();
+        private final List<Transaction> transactions = new ArrayList<>();
+        private double cash;
+
+        StagedBook(Portfolio portfolio, User user) {
+            this.portfolio = portfolio;
+            this.user = user;
+            cash = portfolio.getCash();
+        }
+
+        @Override
+        public double getCash() {
+            return cash;
+        }
+
+        @Override
+        public int getShares(String ticker) {
+            return held.computeIfAbsent(ticker, k -> {
+                Stock stock = portfolio.getPosition(k);
+                return stock == null ? 0 : stock.getShares();
+            });
+        }
+
+        @Override
+        public void fill(String ticker, int shares, double price) {
+            held.put(ticker, getShares(ticker) + shares);
+            changes.merge(ticker, shares, Integer::sum);
+            cash -= shares * price;
+
+            Transaction t = new Transaction(ticker, shares);
+            t.setPrice(price);
+            t.setTransactionDate(now);
+            t.setUser(user);
+            t.setPortfolio(portfolio);
+            transactions.add(t);
+        }
+    }
+
+    /**
+     * Runs {@code trade} in a transaction, starting it over if its commit hit a newer version of a row.
+     * A rolled back attempt leaves nothing behind, and the next one reads the rows again.
+     */
+    private <T> T inTransaction(TransactionCallback<T> trade) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(trade);
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private Portfolio loadPortfolio(int portfolioId) {
+        Portfolio portfolio = portfolioRepository.findById(portfolioId);
+        if (portfolio == null) {
+            throw new ResourceNotFoundException("Portfolio not found");
+        }
+        return portfolio;
+    }
+
+    // A negative buy would be a sale that never checks holdings, and a negative sale a free buy
+    private static void checkShares(int shares) {
+        if (shares <= 0) {
+            throw new TradeRejectedException("Shares must be positive");
+        }
+    }
+
+    private Transaction record(Portfolio portfolio, User user, String ticker, int shares, double price) {
+        Transaction t = new Transaction(ticker, shares);
+        t.setPrice(price);
+        t.setTransactionDate(Timestamp.from(Instant.now()));
+        t.setUser(user);
+        t.setPortfolio(portfolio);
+        return transactionRepository.save(t);
+    }
+}
@@ -6,7 +6,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.List;
 
-public interface TransactionRepository extends JpaRepository<Transaction, Integer> {
+public interface TransactionRepository extends JpaRepository<Transaction, Integer>, TransactionRepositoryCustom {
     List<Transaction> findByUser(User user);
 
     List<Transaction> findByPortfolio(Portfolio portfolio);
@@ -0,0 +1,11 @@
+package cs309.stocks.Transactions;
+
+import java.util.List;
+
+public interface TransactionRepositoryCustom {
+    /**
+     * Inserts the transactions as one JDBC batch. Ids are generated by the database and are not set
+     * on the given objects.
+     */
+    void insertAll(List<Transaction> transactions);
+}
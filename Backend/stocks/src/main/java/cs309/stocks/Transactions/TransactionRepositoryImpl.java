@@ -0,0 +1,30 @@
+package cs309.stocks.Transactions;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+/**
+ * Batched inserts for {@link TransactionRepository}. Transaction ids are IDENTITY columns, which stops
+ * Hibernate from batching inserts, so many rows at once go through plain JDBC instead. The template
+ * joins the surrounding JPA transaction.
+ */
+public class TransactionRepositoryImpl implements TransactionRepositoryCustom {
+    private static final String INSERT = "insert into transaction (ticker, price, shares, transaction_date, user_id, portfolio_id) values (?, ?, ?, ?, ?, ?)";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Override
+    public void insertAll(List<Transaction> transactions) {
+        jdbcTemplate.batchUpdate(INSERT, transactions, transactions.size(), (statement, t) -> {
+            statement.setString(1, t.getTicker());
+            statement.setDouble(2, t.getPrice());
+            statement.setInt(3, t.getShares());
+            statement.setTimestamp(4, t.getTransactionDate());
+            statement.setInt(5, t.getUser().getId());
+            statement.setInt(6, t.getPortfolio().getId());
+        });
+    }
+}
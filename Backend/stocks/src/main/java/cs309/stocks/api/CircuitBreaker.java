@@ -0,0 +1,136 @@
+package cs309.stocks.api;
+
+import cs309.stocks.Exceptions.UpstreamRejectedException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Stops calling an upstream API that keeps failing.
+ * <p>
+ * After a run of consecutive failures the breaker opens and calls are rejected immediately with an
+ * {@link UpstreamRejectedException}, so callers fall back to cached data instead of each waiting on a
+ * timeout. Once the open period has passed a single probe call is let through (half-open): if it
+ * succeeds the breaker closes again, otherwise it stays open for another period.
+ * <p>
+ * Only failures that say the upstream is down or overloaded count: no response, a timeout, 429 or 5xx.
+ * Any other answer, such as a 403 for a ticker the plan does not cover, shows the upstream is up.
+ */
+public class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean probing;
+
+    private final AtomicLong opened = new AtomicLong();
+    private final AtomicLong shortCircuited = new AtomicLong();
+
+    /**
+     * @param name prefix of the environment variables that configure this breaker
+     */
+    public CircuitBreaker(String name) {
+        this(name, Settings.getInt(name + "_BREAKER_FAILURES", 5), Settings.getLong(name + "_BREAKER_OPEN_MS", 30000));
+    }
+
+    public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+        this.name = name;
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Runs {@code call} unless the breaker is open.
+     *
+     * @throws UpstreamRejectedException if the breaker is open, or half-open with a probe already running
+     */
+    public <T> T execute(Supplier<T> call) {
+        boolean probe = permit();
+        try {
+            T result = call.get();
+            onSuccess();
+            return result;
+        } catch (UpstreamRejectedException e) {
+            // Shed by our own scheduler, not a failure of the upstream
+            release(probe);
+            throw e;
+        } catch (HttpTransport.RequestFailedException e) {
+            if (e.isUpstreamFault()) {
+                onFailure();
+            } else {
+                onSuccess();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            // Says nothing about the upstream, e.g. an interrupted caller or a body that did not parse
+            release(probe);
+            throw e;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        synchronized (this) {
+            metrics.put("state", state.name());
+            metrics.put("consecutiveFailures", consecutiveFailures);
+        }
+        metrics.put("opened", opened.get());
+        metrics.put("shortCircuited", shortCircuited.get());
+        return metrics;
+    }
+
+    /**
+     * @return whether this call is the half-open probe
+     */
+    private synchronized boolean permit() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+            state = State.HALF_OPEN;
+        }
+        if (state == State.CLOSED) {
+            return false;
+        }
+        if (state == State.HALF_OPEN && !probing) {
+            probing = true;
+            return true;
+        }
+        shortCircuited.incrementAndGet();
+        throw new UpstreamRejectedException(name + " is unavailable, try again shortly");
+    }
+
+    private synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probing = false;
+    }
+
+    private synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            if (state != State.OPEN) {
+                opened.incrementAndGet();
+            }
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+        probing = false;
+    }
+
+    private synchronized void release(boolean probe) {
+        if (probe) {
+            probing = false;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package cs309.stocks.api;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Company news per symbol, cached one day at a time over a sliding window.
+ * <p>
+ * A past day's articles do not change once the day is over, so each day is fetched until it has been
+ * seen complete and then kept as is; only the newest day is refetched, and only after a short TTL.
+ * Days that fall out of the requested window are dropped. Each day's articles are kept newest first,
+ * so the merged window is already in order.
+ */
+public class CompanyNewsCache {
+    private static final News[] NONE = new News[0];
+
+    private final Loader loader;
+    private final long ttlMillis;
+    private final int maxSymbols;
+    private final Map<String, SymbolNews> symbols;
+
+    private final AtomicLong dayHits = new AtomicLong();
+    private final AtomicLong fetches = new AtomicLong();
+
+    public CompanyNewsCache(Loader loader) {
+        this.loader = loader;
+        ttlMillis = Settings.getLong("COMPANY_NEWS_TTL_MS", 300000);
+        maxSymbols = Settings.getInt("COMPANY_NEWS_MAX_SYMBOLS", 500);
+        symbols = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SymbolNews> eldest) {
+                return size() > maxSymbols;
+            }
+        };
+    }
+
+    /**
+     * Articles about {@code symbol} published from {@code from} to {@code to} (inclusive), newest first.
+     */
+    public List<News> get(String symbol, LocalDate from, LocalDate to) {
+        String key = symbol.toUpperCase(Locale.ROOT);
+        SymbolNews news;
+        synchronized (symbols) {
+            news = symbols.computeIfAbsent(key, k -> new SymbolNews());
+        }
+        return news.get(key, from, to);
+    }
+
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        synchronized (symbols) {
+            metrics.put("symbols", symbols.size());
+        }
+        metrics.put("dayHits", dayHits.get());
+        metrics.put("fetches", fetches.get());
+        return metrics;
+    }
+
+    @FunctionalInterface
+    public interface Loader {
+        List<News> load(String symbol, LocalDate from, LocalDate to);
+    }
+
+    private class SymbolNews {
+        private final TreeMap<LocalDate, Day> days = new TreeMap<>();
+
+        synchronized List<News> get(String symbol, LocalDate from, LocalDate to) {
+            days.headMap(from).clear();
+            days.tailMap(to, false).clear();
+
+            long now = System.currentTimeMillis();
+            LocalDate missingFrom = null;
+            LocalDate missingTo = null;
+            for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+                Day cached = days.get(day);
+                if (cached != null && (cached.complete || now - cached.fetchedAt < ttlMillis)) {
+                    dayHits.incrementAndGet();
+                    continue;
+                }
+                if (missingFrom == null) {
+                    missingFrom = day;
+                }
+                missingTo = day;
+            }
+
+            if (missingFrom != null) {
+                try {
+                    fetches.incrementAndGet();
+                    store(loader.load(symbol, missingFrom, missingTo), missingFrom, missingTo, now);
+                } catch (RuntimeException e) {
+                    // Serve whatever days are already held
+                    if (days.isEmpty()) {
+                        throw e;
+                    }
+                }
+            }
+
+            List<News> result = new ArrayList<>();
+            for (Day day : days.subMap(from, true, to, true).descendingMap().values()) {
+                Collections.addAll(result, day.articles);
+            }
+            return result;
+        }
+
+        /**
+         * Replaces the days from {@code first} to {@code last} with the articles fetched for them.
+         */
+        private void store(List<News> fetched, LocalDate first, LocalDate last, long fetchedAt) {
+            Map<LocalDate, List<News>> byDay = new HashMap<>();
+            for (News news : fetched) {
+                LocalDate day = LocalDate.ofEpochDay(Math.floorDiv(news.getDatetime(), 86400L));
+                if (!day.isBefore(first) && !day.isAfter(last)) {
+                    byDay.computeIfAbsent(day, d -> new ArrayList<>()).add(news);
+                }
+            }
+            for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+                List<News> articles = byDay.get(day);
+                News[] sorted = articles == null ? NONE : articles.toArray(News[]::new);
+                Arrays.sort(sorted, Comparator.comparingLong(News::getDatetime).thenComparingInt(News::getId).reversed());
+                // Publishing times are UTC, so a day is final once it has ended in UTC
+                boolean complete = fetchedAt >= day.plusDays(1).toEpochDay() * 86400000L;
+                days.put(day, new Day(sorted, fetchedAt, complete));
+            }
+        }
+    }
+
+    private record Day(News[] articles, long fetchedAt, boolean complete) {
+    }
+}
@@ -1,65 +1,66 @@
 package cs309.stocks.api;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.MalformedURLException;
-import java.net.URL;
+import java.net.URI;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.List;
+import java.time.LocalDate;
 
 public class FMP {
     private static FMP instance;
     private final String baseUrl;
     private final String apiKey;
+    private final HttpTransport transport;
+    private final UpstreamScheduler scheduler;
+    private final CircuitBreaker breaker;
 
     private FMP() {
         baseUrl = "https://financialmodelingprep.com/api/v3/historical-price-full/";
         apiKey = System.getenv("FMP_API_KEY");
+        transport = HttpTransport.getInstance();
+        scheduler = new UpstreamScheduler("FMP", 30, 5);
+        breaker = new CircuitBreaker("FMP");
     }
 
-    public static FMP getInstance() {
+    public static synchronized FMP getInstance() {
         if (instance == null) {
             instance = new FMP();
         }
         return instance;
     }
 
-    public List<DayStats> search(String symbol) {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    /**
+     * Fetches the full daily price history for {@code symbol}, streamed straight into primitive columns.
+     *
+     * @throws IllegalArgumentException if {@code symbol} is not a valid ticker
+     */
+    public PriceSeries history(String symbol) {
+        return request(baseUrl + encode(symbol) + "?apikey=" + apiKey);
+    }
 
-        List<DayStats> data;
-        try {
-            data = mapper.readValue(request(symbol), HistoricalData.class).getHistorical();
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
-        return data;
+    /**
+     * Fetches the daily price history for {@code symbol} starting at {@code from} (inclusive).
+     *
+     * @throws IllegalArgumentException if {@code symbol} is not a valid ticker
+     */
+    public PriceSeries history(String symbol, LocalDate from) {
+        return request(baseUrl + encode(symbol) + "?from=" + from + "&apikey=" + apiKey);
     }
 
-    private String request(String symbol) {
-        URL url;
-        try {
-            url = new URL(baseUrl + symbol + "?apikey=" + apiKey);
-        } catch (MalformedURLException e) {
-            throw new RuntimeException(e);
-        }
+    public UpstreamScheduler getScheduler() {
+        return scheduler;
+    }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
-            StringBuilder res = new StringBuilder();
-            String line = reader.readLine();
-            while (line != null) {
-                res.append(line.strip());
-                line = reader.readLine();
-            }
-            return res.toString();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    private static String encode(String symbol) {
+        return URLEncoder.encode(Symbol.check(symbol), StandardCharsets.UTF_8);
+    }
+
+    private PriceSeries request(String url) {
+        // Built first, so a request that cannot be sent spends no token and is no upstream failure
+        URI uri = URI.create(url);
+        return breaker.execute(() -> scheduler.execute(RequestPriority.VALUATION, () -> transport.get(uri, PriceSeriesParser::parse)));
     }
 }
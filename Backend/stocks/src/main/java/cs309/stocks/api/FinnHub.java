@@ -1,127 +1,201 @@
 package cs309.stocks.api;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.DeserializationFeature;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.MalformedURLException;
-import java.net.URL;
+
+import java.net.URI;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 public class FinnHub {
     private static FinnHub instance;
     private final String baseUrl;
     private final String apiKey;
+    private final HttpTransport transport;
+    private final UpstreamScheduler scheduler;
+    private final CircuitBreaker breaker;
+    private final QuoteCache quoteCache;
+    private final FundamentalsCache fundamentals;
+    private final ExecutorService quoteExecutor;
+    private final ExecutorService refreshExecutor;
 
     private FinnHub() {
         baseUrl = "https://finnhub.io/api/v1/";
         apiKey = System.getenv("FINNHUB_API_KEY");
+        transport = HttpTransport.getInstance();
+        scheduler = new UpstreamScheduler("FINNHUB", 60, 10);
+        breaker = new CircuitBreaker("FINNHUB");
+        quoteExecutor = Executors.newFixedThreadPool(Settings.getInt("QUOTE_FETCH_THREADS", 8), r -> {
+            Thread thread = new Thread(r, "finnhub-quotes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Batch fetches on quoteExecutor wait for quotes, so background refreshes get threads of their own
+        refreshExecutor = Executors.newFixedThreadPool(Settings.getInt("QUOTE_REFRESH_THREADS", 2), r -> {
+            Thread thread = new Thread(r, "finnhub-quote-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        quoteCache = new QuoteCache(refreshExecutor);
+        fundamentals = new FundamentalsCache();
     }
 
-    public static FinnHub getInstance() {
-        if (instance != null) {
-            return instance;
+    public static synchronized FinnHub getInstance() {
+        if (instance == null) {
+            instance = new FinnHub();
         }
-        instance = new FinnHub();
         return instance;
     }
 
-    public SymbolSearch search(String query) {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            return mapper.readValue(request("search?q=" + query + "&exchange=US"), SymbolSearch.class);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Every symbol listed on US exchanges. This is a large response, so callers should load it once
+     * and search it locally; see {@link SymbolIndex}.
+     */
+    public List<Symbol> symbols() {
+        return request(RequestPriority.SEARCH, "stock/symbol?exchange=US", new TypeReference<List<Symbol>>() {
+        });
     }
 
     public Quote quote(String symbol) {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            return new Quote(mapper.readValue(request("quote?symbol=" + symbol), RawQuote.class));
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
+        return quote(symbol, RequestPriority.VALUATION);
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code symbol} is not a valid ticker
+     */
+    public Quote quote(String symbol, RequestPriority priority) {
+        Symbol.check(symbol);
+        // A trade must be priced with a current quote; everything else may show the last known one
+        return quoteCache.get(symbol, priority != RequestPriority.TRADE, s -> fetchQuote(s, priority));
+    }
+
+    /**
+     * Fetches quotes for several symbols at once. Duplicate symbols are fetched once, and the
+     * remaining fetches run concurrently so the whole batch costs about one upstream round trip.
+     *
+     * @return map from each requested symbol to its quote
+     */
+    public Map<String, Quote> quotes(Collection<String> symbols) {
+        return quotes(symbols, RequestPriority.VALUATION);
+    }
+
+    public Map<String, Quote> quotes(Collection<String> symbols, RequestPriority priority) {
+        Set<String> unique = new LinkedHashSet<>(symbols);
+        // Rejected up front, so a bad symbol fails the batch before any of it is fetched
+        unique.forEach(Symbol::check);
+        Map<String, Quote> quotes = new HashMap<>();
+        if (unique.size() == 1) {
+            String symbol = unique.iterator().next();
+            quotes.put(symbol, quote(symbol, priority));
+            return quotes;
         }
+
+        Map<String, CompletableFuture<Quote>> pending = new LinkedHashMap<>();
+        for (String symbol : unique) {
+            pending.put(symbol, CompletableFuture.supplyAsync(() -> quote(symbol, priority), quoteExecutor));
+        }
+        for (Map.Entry<String, CompletableFuture<Quote>> entry : pending.entrySet()) {
+            try {
+                quotes.put(entry.getKey(), entry.getValue().join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        return quotes;
+    }
+
+    public QuoteCache getQuoteCache() {
+        return quoteCache;
+    }
+
+    public FundamentalsCache getFundamentals() {
+        return fundamentals;
+    }
+
+    public UpstreamScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public CircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    private Quote fetchQuote(String symbol, RequestPriority priority) {
+        return new Quote(request(priority, "quote?symbol=" + encode(symbol), RawQuote.class));
     }
 
     public Stats stats(String symbol) {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        try {
-            String r = request("stock/metric?symbol=" + symbol);
-            return new Stats(mapper.readValue(r, AllStats.class));
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        Symbol.check(symbol);
+        return fundamentals.get(symbol, s -> request(RequestPriority.VALUATION, "stock/metric?symbol=" + encode(s), Stats::parse));
     }
 
     public List<Recommendation> recommendations(String symbol) {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        try {
-            String r = request("stock/recommendation?symbol=" + symbol);
-            return mapper.readValue(r, new TypeReference<List<Recommendation>>() {
-            });
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+        Symbol.check(symbol);
+        return request(RequestPriority.SEARCH, "stock/recommendation?symbol=" + encode(symbol), new TypeReference<List<Recommendation>>() {
+        });
     }
 
-    public boolean isMarketClosed() {
-        ObjectMapper mapper = new ObjectMapper();
-        try {
-            String r = request("stock/market-status?exchange=US");
-            HashMap<String, ?> res = mapper.readValue(r, HashMap.class);
-            return !((boolean) res.get("isOpen"));
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
+    public MarketStatus marketStatus() {
+        return request(RequestPriority.SEARCH, "stock/market-status?exchange=US", MarketStatus.class);
     }
 
-    private String request(String path) {
-        URL url;
-        try {
-            url = new URL(baseUrl + path + "&token=" + apiKey);
-        } catch (MalformedURLException e) {
-            throw new RuntimeException(e);
-        }
+    public MarketHolidays marketHolidays() {
+        return request(RequestPriority.SEARCH, "stock/market-holiday?exchange=US", MarketHolidays.class);
+    }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
-            return reader.readLine();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    // The URI is built first, so a request that cannot be sent spends no token and is no upstream failure
+    private <T> T request(RequestPriority priority, String path, Class<T> type) {
+        URI uri = uri(path);
+        return breaker.execute(() -> scheduler.execute(priority, () -> transport.get(uri, type)));
+    }
+
+    private <T> T request(RequestPriority priority, String path, TypeReference<T> type) {
+        URI uri = uri(path);
+        return breaker.execute(() -> scheduler.execute(priority, () -> transport.get(uri, type)));
+    }
+
+    private <T> T request(RequestPriority priority, String path, HttpTransport.BodyParser<T> parser) {
+        URI uri = uri(path);
+        return breaker.execute(() -> scheduler.execute(priority, () -> transport.get(uri, parser)));
     }
 
-    public List<News> getNews(String category) {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    /**
+     * @throws IllegalArgumentException if the request cannot be made into a URI
+     */
+    private URI uri(String path) {
+        return URI.create(baseUrl + path + "&token=" + apiKey);
+    }
 
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param minId only return articles with a higher id than this (0 for the whole feed)
+     */
+    public List<News> getNews(String category, int minId) {
         try {
-            String response = request("news?category=" + category);
-            return mapper.readValue(response, new TypeReference<List<News>>() {
+            return request(RequestPriority.SEARCH, "news?category=" + category + "&minId=" + minId, new TypeReference<List<News>>() {
             });
-        } catch (JsonProcessingException e) {
+        } catch (RuntimeException e) {
             throw new RuntimeException("Failed to fetch news: " + e.getMessage(), e);
         }
     }
 
     public List<News> getCompanyNews(String symbol, String from, String to) {
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-
+        Symbol.check(symbol);
         try {
-            String response = request("company-news?symbol=" + symbol + "&from=" + from + "&to=" + to);
-            return mapper.readValue(response, new TypeReference<List<News>>() {
+            return request(RequestPriority.SEARCH, "company-news?symbol=" + encode(symbol) + "&from=" + from + "&to=" + to, new TypeReference<List<News>>() {
             });
-        } catch (JsonProcessingException e) {
+        } catch (RuntimeException e) {
             throw new RuntimeException("Failed to fetch company news: " + e.getMessage(), e);
         }
     }
@@ -0,0 +1,83 @@
+package cs309.stocks.api;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Per-symbol cache of {@link Stats}. FinnHub recomputes fundamentals at most once a day, so an entry
+ * stays valid until another trading session has closed since it was fetched. If the refresh fails,
+ * the previous day's stats keep being served.
+ * <p>
+ * Symbols come straight from requests, so only the FUNDAMENTALS_CACHE_SIZE most recently used are kept.
+ */
+public class FundamentalsCache {
+    private final Map<String, Slot> slots;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+
+    public FundamentalsCache() {
+        this(Settings.getInt("FUNDAMENTALS_CACHE_SIZE", 5000));
+    }
+
+    public FundamentalsCache(int maxEntries) {
+        slots = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Slot> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached stats for {@code symbol}, calling {@code loader} when there are none yet or a
+     * trading day has closed since they were fetched. Callers for the same symbol wait for one fetch.
+     */
+    public Stats get(String symbol, Function<String, Stats> loader) {
+        String key = symbol.toUpperCase(Locale.ROOT);
+        Slot slot;
+        synchronized (slots) {
+            slot = slots.computeIfAbsent(key, k -> new Slot());
+        }
+        long tradingDay = MarketCalendar.getInstance().lastCompletedTradingDay(Instant.now()).toEpochDay();
+        synchronized (slot) {
+            if (slot.stats != null && slot.tradingDay == tradingDay) {
+                hits.incrementAndGet();
+                return slot.stats;
+            }
+            misses.incrementAndGet();
+            try {
+                slot.stats = loader.apply(symbol);
+            } catch (RuntimeException e) {
+                if (slot.stats == null) {
+                    throw e;
+                }
+                staleServed.incrementAndGet();
+                return slot.stats;
+            }
+            slot.tradingDay = tradingDay;
+            return slot.stats;
+        }
+    }
+
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("staleServed", staleServed.get());
+        synchronized (slots) {
+            metrics.put("size", slots.size());
+        }
+        return metrics;
+    }
+
+    private static class Slot {
+        private Stats stats;
+        private long tradingDay;
+    }
+}
@@ -0,0 +1,333 @@
+package cs309.stocks.api;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * On-disk daily price history, one memory-mapped columnar file per symbol.
+ * <p>
+ * Each file holds a small header followed by fixed-capacity columns (epoch days, then open, high, low
+ * and close), so a read is just a set of buffer views over the mapping and nothing is copied onto the
+ * heap. When a symbol is requested after a new trading day has closed, only the bars newer than the
+ * last stored one are fetched from FMP and appended in place. If that fetch fails, the stored history
+ * is served as it is.
+ * <p>
+ * At most PRICE_STORE_OPEN_FILES files are kept mapped, least recently used first out; an evicted
+ * mapping is released once the views handed out over it are gone. A symbol FMP has no history for is
+ * remembered as missing until the next trading day closes, so asking again costs no fetch.
+ */
+public class HistoricalPriceStore {
+    private static final int MAGIC = 0x53445053; // "SDPS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int SIZE_OFFSET = 8;
+    private static final int CAPACITY_OFFSET = 12;
+    private static final int CHECKED_AT_OFFSET = 16;
+    private static final int BAR_BYTES = Integer.BYTES + 4 * Double.BYTES;
+
+    private static HistoricalPriceStore instance;
+
+    private final Path directory;
+    private final long recheckMillis;
+    // A symbol's file is only used under its lock, so an evicted one is never in use next to its replacement
+    private final Object[] locks = new Object[64];
+    private final Map<String, SymbolFile> files;
+    // Symbols with no history upstream, and the last completed trading day when that was found
+    private final Map<String, Integer> missing;
+
+    private final AtomicLong localReads = new AtomicLong();
+    private final AtomicLong fullFetches = new AtomicLong();
+    private final AtomicLong tailFetches = new AtomicLong();
+    private final AtomicLong appendedBars = new AtomicLong();
+    private final AtomicLong failedRefreshes = new AtomicLong();
+    private final AtomicLong missingHits = new AtomicLong();
+
+    private HistoricalPriceStore() {
+        directory = Path.of(Settings.getString("PRICE_STORE_DIR", "price-store"));
+        recheckMillis = Settings.getLong("PRICE_STORE_RECHECK_MS", 3600000);
+        int maxOpenFiles = Settings.getInt("PRICE_STORE_OPEN_FILES", 1000);
+        files = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SymbolFile> eldest) {
+                return size() > maxOpenFiles;
+            }
+        };
+        missing = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > maxOpenFiles;
+            }
+        };
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static synchronized HistoricalPriceStore getInstance() {
+        if (instance == null) {
+            instance = new HistoricalPriceStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the daily history for {@code symbol}, fetching only the days missing from the local
+     * store. Unknown or malformed symbols give an empty series.
+     */
+    public PriceSeries get(String symbol) {
+        String key = symbol.toUpperCase(Locale.ROOT);
+        if (!Symbol.isValid(key)) {
+            return PriceSeries.empty();
+        }
+
+        int tradingDay = lastCompletedTradingDay();
+        synchronized (locks[Math.floorMod(key.hashCode(), locks.length)]) {
+            synchronized (missing) {
+                Integer missingSince = missing.get(key);
+                if (missingSince != null && missingSince == tradingDay) {
+                    missingHits.incrementAndGet();
+                    return PriceSeries.empty();
+                }
+            }
+            SymbolFile file;
+            synchronized (files) {
+                file = files.computeIfAbsent(key, k -> new SymbolFile(directory.resolve(k + ".bin")));
+            }
+            try {
+                boolean stored = file.isOpen() || file.open();
+                if (!stored || file.isEmpty()) {
+                    fullFetches.incrementAndGet();
+                    PriceSeries history = FMP.getInstance().history(key);
+                    if (history.isEmpty()) {
+                        synchronized (missing) {
+                            missing.put(key, tradingDay);
+                        }
+                        return history;
+                    }
+                    file.create(completedBars(history), System.currentTimeMillis());
+                } else if (needsRefresh(file, tradingDay)) {
+                    tailFetches.incrementAndGet();
+                    LocalDate from = LocalDate.ofEpochDay(file.lastDay() + 1L);
+                    try {
+                        file.append(completedBars(FMP.getInstance().history(key, from)), System.currentTimeMillis());
+                    } catch (RuntimeException e) {
+                        failedRefreshes.incrementAndGet();
+                    }
+                } else {
+                    localReads.incrementAndGet();
+                }
+                return file.view();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        synchronized (files) {
+            metrics.put("openFiles", files.size());
+        }
+        synchronized (missing) {
+            metrics.put("missingSymbols", missing.size());
+        }
+        metrics.put("missingHits", missingHits.get());
+        metrics.put("localReads", localReads.get());
+        metrics.put("fullFetches", fullFetches.get());
+        metrics.put("tailFetches", tailFetches.get());
+        metrics.put("appendedBars", appendedBars.get());
+        metrics.put("failedRefreshes", failedRefreshes.get());
+        return metrics;
+    }
+
+    private boolean needsRefresh(SymbolFile file, int tradingDay) {
+        long now = System.currentTimeMillis();
+        return file.lastDay() < tradingDay && now - file.checkedAt() >= recheckMillis;
+    }
+
+    /**
+     * Drops a bar for a session that has not closed yet, so a partial day is never stored.
+     */
+    private PriceSeries completedBars(PriceSeries series) {
+        int last = lastCompletedTradingDay();
+        int n = series.size();
+        while (n > 0 && series.epochDay(n - 1) > last) {
+            n--;
+        }
+        if (n == series.size()) {
+            return series;
+        }
+        PriceSeries.Builder builder = new PriceSeries.Builder(n);
+        for (int i = 0; i < n; i++) {
+            builder.add(series.epochDay(i), series.open(i), series.high(i), series.low(i), series.close(i));
+        }
+        return builder.build();
+    }
+
+    private static int lastCompletedTradingDay() {
+        return (int) MarketCalendar.getInstance().lastCompletedTradingDay(Instant.now()).toEpochDay();
+    }
+
+    /**
+     * One symbol's file. Callers hold the symbol's lock; views handed out earlier stay valid after an
+     * append, a grow or an eviction because they only cover bars that were already written and keep
+     * their mapping alive.
+     */
+    private class SymbolFile {
+        private final Path path;
+        private MappedByteBuffer buffer;
+        private int size;
+        private int capacity;
+
+        SymbolFile(Path path) {
+            this.path = path;
+        }
+
+        boolean isOpen() {
+            return buffer != null;
+        }
+
+        boolean open() throws IOException {
+            if (!Files.exists(path)) {
+                return false;
+            }
+            map();
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                buffer = null;
+                Files.delete(path);
+                return false;
+            }
+            size = buffer.getInt(SIZE_OFFSET);
+            capacity = buffer.getInt(CAPACITY_OFFSET);
+            return true;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int lastDay() {
+            return size == 0 ? Integer.MIN_VALUE : buffer.getInt(dayOffset(size - 1));
+        }
+
+        long checkedAt() {
+            return buffer.getLong(CHECKED_AT_OFFSET);
+        }
+
+        void create(PriceSeries series, long checkedAt) throws IOException {
+            write(path, series, 0, series.size(), Math.max(64, series.size() + series.size() / 4), checkedAt);
+            map();
+            size = series.size();
+            capacity = buffer.getInt(CAPACITY_OFFSET);
+        }
+
+        void append(PriceSeries series, long checkedAt) throws IOException {
+            int last = lastDay();
+            int start = 0;
+            while (start < series.size() && series.epochDay(start) <= last) {
+                start++;
+            }
+            int added = series.size() - start;
+            if (size + added > capacity) {
+                grow(size + added);
+            }
+            for (int i = start; i < series.size(); i++) {
+                putBar(size + i - start, series, i);
+            }
+            // Publish the new bars only after they are written
+            size += added;
+            buffer.putInt(SIZE_OFFSET, size);
+            buffer.putLong(CHECKED_AT_OFFSET, checkedAt);
+            appendedBars.addAndGet(added);
+        }
+
+        PriceSeries view() {
+            return new PriceSeries(
+                    buffer.slice(dayOffset(0), size * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer(),
+                    column(0), column(1), column(2), column(3), size);
+        }
+
+        private DoubleBuffer column(int column) {
+            return buffer.slice(priceOffset(column, 0), size * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+        }
+
+        private void grow(int needed) throws IOException {
+            // Rewrite into a larger file and swap it in, so views over the old mapping stay readable
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            write(tmp, view(), 0, size, Math.max(needed, capacity * 2), checkedAt());
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            map();
+            capacity = buffer.getInt(CAPACITY_OFFSET);
+        }
+
+        private void write(Path target, PriceSeries series, int from, int to, int newCapacity, long checkedAt) throws IOException {
+            newCapacity += newCapacity & 1; // keeps the double columns 8-byte aligned
+            long bytes = HEADER_BYTES + (long) newCapacity * BAR_BYTES;
+            try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+                out.order(ByteOrder.LITTLE_ENDIAN);
+                out.putInt(0, MAGIC);
+                out.putInt(4, VERSION);
+                out.putInt(SIZE_OFFSET, to - from);
+                out.putInt(CAPACITY_OFFSET, newCapacity);
+                out.putLong(CHECKED_AT_OFFSET, checkedAt);
+                for (int i = from; i < to; i++) {
+                    int row = i - from;
+                    out.putInt(HEADER_BYTES + row * Integer.BYTES, series.epochDay(i));
+                    out.putDouble(offset(newCapacity, 0, row), series.open(i));
+                    out.putDouble(offset(newCapacity, 1, row), series.high(i));
+                    out.putDouble(offset(newCapacity, 2, row), series.low(i));
+                    out.putDouble(offset(newCapacity, 3, row), series.close(i));
+                }
+                out.force();
+            }
+        }
+
+        private void map() throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+
+        private void putBar(int row, PriceSeries series, int i) {
+            buffer.putInt(dayOffset(row), series.epochDay(i));
+            buffer.putDouble(priceOffset(0, row), series.open(i));
+            buffer.putDouble(priceOffset(1, row), series.high(i));
+            buffer.putDouble(priceOffset(2, row), series.low(i));
+            buffer.putDouble(priceOffset(3, row), series.close(i));
+        }
+
+        private int dayOffset(int row) {
+            return HEADER_BYTES + row * Integer.BYTES;
+        }
+
+        private int priceOffset(int column, int row) {
+            return offset(capacity, column, row);
+        }
+
+        private int offset(int columnCapacity, int column, int row) {
+            return HEADER_BYTES + columnCapacity * Integer.BYTES + (column * columnCapacity + row) * Double.BYTES;
+        }
+    }
+}
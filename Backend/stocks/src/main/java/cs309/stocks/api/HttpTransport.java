@@ -0,0 +1,257 @@
+package cs309.stocks.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.net.ssl.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared HTTP transport for the market data APIs.
+ * <p>
+ * One {@link HttpClient} is kept for the whole application so connections stay open between calls
+ * (HTTP/2 when the server offers it, pooled keep-alive HTTP/1.1 otherwise), and response bodies are
+ * streamed straight into a single {@link ObjectMapper}, which is thread-safe once configured.
+ */
+public class HttpTransport {
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private static HttpTransport instance;
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final CountingSSLContext sslContext;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong http2Responses = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+
+    private HttpTransport() {
+        // Read by the JDK connection pool when the first client is created
+        System.setProperty("jdk.httpclient.keepalive.timeout",
+                String.valueOf(Settings.getLong("MARKET_DATA_KEEPALIVE_SECONDS", 300)));
+
+        requestTimeout = Duration.ofMillis(Settings.getLong("MARKET_DATA_REQUEST_TIMEOUT_MS", 10000));
+        try {
+            sslContext = new CountingSSLContext(SSLContext.getDefault());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(Settings.getLong("MARKET_DATA_CONNECT_TIMEOUT_MS", 5000)))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .sslContext(sslContext)
+                .build();
+    }
+
+    public static synchronized HttpTransport getInstance() {
+        if (instance == null) {
+            instance = new HttpTransport();
+        }
+        return instance;
+    }
+
+    public static ObjectMapper mapper() {
+        return mapper;
+    }
+
+    public <T> T get(URI uri, Class<T> type) {
+        return get(uri, in -> mapper.readValue(in, type));
+    }
+
+    public <T> T get(URI uri, TypeReference<T> type) {
+        return get(uri, in -> mapper.readValue(in, type));
+    }
+
+    /**
+     * Performs a GET request and hands the response body to {@code parser} as it arrives.
+     *
+     * @throws RequestFailedException if there was no response, or it was not a 2xx
+     */
+    public <T> T get(URI uri, BodyParser<T> parser) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        try {
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.version() == HttpClient.Version.HTTP_2) {
+                http2Responses.incrementAndGet();
+            }
+            try (InputStream body = response.body()) {
+                if (response.statusCode() / 100 != 2) {
+                    failures.incrementAndGet();
+                    throw new RequestFailedException("HTTP " + response.statusCode() + " from " + request.uri().getHost(), response.statusCode(), null);
+                }
+                return parser.parse(body);
+            }
+        } catch (JsonProcessingException e) {
+            // The upstream answered, just not with what we expected
+            failures.incrementAndGet();
+            throw new RuntimeException(e);
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            throw new RequestFailedException("No response from " + request.uri().getHost() + ": " + e, 0, e);
+        } catch (InterruptedException e) {
+            failures.incrementAndGet();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            totalLatencyNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Opens a WebSocket over the shared client, so streams reuse its TLS setup.
+     */
+    public CompletableFuture<WebSocket> openWebSocket(URI uri, WebSocket.Listener listener) {
+        return client.newWebSocketBuilder()
+                .connectTimeout(requestTimeout)
+                .buildAsync(uri, listener);
+    }
+
+    public Map<String, Number> getMetrics() {
+        long total = requests.get();
+        long connections = sslContext.getConnectionsOpened();
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("requests", total);
+        metrics.put("failures", failures.get());
+        metrics.put("http2Responses", http2Responses.get());
+        metrics.put("tlsConnectionsOpened", connections);
+        metrics.put("reusedConnections", Math.max(0, total - connections));
+        metrics.put("averageLatencyMs", total == 0 ? 0 : totalLatencyNanos.get() / total / 1_000_000.0);
+        return metrics;
+    }
+
+    /**
+     * A request that got no usable answer: no response at all (including a timeout), or an HTTP status
+     * other than 2xx.
+     */
+    public static class RequestFailedException extends RuntimeException {
+        private final int status;
+
+        public RequestFailedException(String message, int status, Throwable cause) {
+            super(message, cause);
+            this.status = status;
+        }
+
+        /**
+         * @return the HTTP status, or 0 if there was no response
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Whether this says the upstream is down or overloaded, rather than that it turned down this
+         * particular request (a ticker the plan does not cover, say).
+         */
+        public boolean isUpstreamFault() {
+            return status == 0 || status == 429 || status >= 500;
+        }
+    }
+
+    @FunctionalInterface
+    public interface BodyParser<T> {
+        T parse(InputStream body) throws IOException;
+    }
+
+    /**
+     * Wraps the default SSL context and counts the engines it hands out. The HTTP client creates one
+     * engine per new TLS connection, so this is the number of TLS handshakes actually paid for.
+     */
+    private static class CountingSSLContext extends SSLContext {
+        private final CountingSpi spi;
+
+        CountingSSLContext(SSLContext delegate) {
+            this(new CountingSpi(delegate), delegate);
+        }
+
+        private CountingSSLContext(CountingSpi spi, SSLContext delegate) {
+            super(spi, delegate.getProvider(), delegate.getProtocol());
+            this.spi = spi;
+        }
+
+        long getConnectionsOpened() {
+            return spi.engines.get();
+        }
+    }
+
+    private static class CountingSpi extends SSLContextSpi {
+        private final SSLContext delegate;
+        private final AtomicLong engines = new AtomicLong();
+
+        CountingSpi(SSLContext delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom random) throws KeyManagementException {
+            delegate.init(km, tm, random);
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            engines.incrementAndGet();
+            return delegate.createSSLEngine();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            engines.incrementAndGet();
+            return delegate.createSSLEngine(host, port);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
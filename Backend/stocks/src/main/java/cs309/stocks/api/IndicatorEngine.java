@@ -0,0 +1,410 @@
+package cs309.stocks.api;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Technical indicators over daily closes, cached per symbol, indicator and parameters.
+ * <p>
+ * Every indicator is computed in one pass with running state (window sums, smoothed averages), so when
+ * the daily history gains a bar only that bar is folded in and the cached values are extended in O(1).
+ * The cache keeps the most recently used series, up to INDICATOR_CACHE_SIZE.
+ */
+public class IndicatorEngine {
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong foldedBars = new AtomicLong();
+
+    public IndicatorEngine() {
+        int maxEntries = Settings.getInt("INDICATOR_CACHE_SIZE", 1000);
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * The values of {@code spec} over {@code daily}, starting at the first bar where it is defined.
+     *
+     * @param daily the symbol's current daily history, oldest bar first
+     */
+    public IndicatorSeries get(String symbol, PriceSeries daily, Spec spec) {
+        String key = symbol.toUpperCase(Locale.ROOT) + '/' + spec;
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.computeIfAbsent(key, k -> new Entry(spec));
+        }
+        return entry.get(daily);
+    }
+
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        synchronized (entries) {
+            metrics.put("series", entries.size());
+        }
+        metrics.put("hits", hits.get());
+        metrics.put("rebuilds", rebuilds.get());
+        metrics.put("foldedBars", foldedBars.get());
+        return metrics;
+    }
+
+    public enum Type {
+        SMA, EMA, RSI, MACD, BOLLINGER
+    }
+
+    /**
+     * An indicator and its parameters. Parameters the indicator does not use are zero, so equal
+     * requests share a cache entry.
+     *
+     * @param period window length for SMA, EMA, RSI and Bollinger bands
+     * @param fast   fast EMA length for MACD
+     * @param slow   slow EMA length for MACD
+     * @param signal signal line EMA length for MACD
+     * @param width  band width in standard deviations for Bollinger bands
+     */
+    public record Spec(Type type, int period, int fast, int slow, int signal, double width) {
+        /**
+         * Builds a spec from request parameters, filling in the usual defaults for missing ones.
+         *
+         * @throws IllegalArgumentException for an unknown indicator or out of range parameters
+         */
+        public static Spec parse(String indicator, Integer period, Integer fast, Integer slow, Integer signal, Double width) {
+            Type type;
+            try {
+                type = Type.valueOf(indicator.strip().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown indicator: " + indicator + " (expected sma, ema, rsi, macd or bollinger)");
+            }
+            Spec spec = switch (type) {
+                case SMA, EMA -> new Spec(type, orDefault(period, 20), 0, 0, 0, 0);
+                case RSI -> new Spec(type, orDefault(period, 14), 0, 0, 0, 0);
+                case MACD -> new Spec(type, 0, orDefault(fast, 12), orDefault(slow, 26), orDefault(signal, 9), 0);
+                case BOLLINGER -> new Spec(type, orDefault(period, 20), 0, 0, 0, width == null ? 2 : width);
+            };
+            if (type == Type.MACD) {
+                if (spec.fast < 1 || spec.slow <= spec.fast || spec.signal < 1 || spec.slow > 1000 || spec.signal > 1000) {
+                    throw new IllegalArgumentException("MACD needs 1 <= fast < slow <= 1000 and 1 <= signal <= 1000");
+                }
+            } else if (spec.period < 1 || spec.period > 1000) {
+                throw new IllegalArgumentException("period must be between 1 and 1000");
+            }
+            if (type == Type.BOLLINGER && !(spec.width > 0)) {
+                throw new IllegalArgumentException("width must be positive");
+            }
+            return spec;
+        }
+
+        private static int orDefault(Integer value, int fallback) {
+            return value == null ? fallback : value;
+        }
+
+        Calculator calculator() {
+            return switch (type) {
+                case SMA -> new Sma(period);
+                case EMA -> new EmaCalculator(period);
+                case RSI -> new Rsi(period);
+                case MACD -> new Macd(fast, slow, signal);
+                case BOLLINGER -> new Bollinger(period, width);
+            };
+        }
+    }
+
+    /**
+     * One cached indicator series. Rows are only ever appended, so views handed out earlier stay valid.
+     */
+    private class Entry {
+        private final Spec spec;
+        private Calculator calculator;
+        private String[] columns;
+        private int[] days;
+        private double[][] values;
+        private double[] row;
+        private int size;
+        private int firstDay;
+        private int lastDay;
+
+        Entry(Spec spec) {
+            this.spec = spec;
+        }
+
+        synchronized IndicatorSeries get(PriceSeries daily) {
+            if (daily.isEmpty()) {
+                return new IndicatorSeries(spec.calculator().columns(), new int[0], new double[0][0], 0, 0);
+            }
+            int first = daily.epochDay(0);
+            int last = daily.epochDay(daily.size() - 1);
+            int from;
+            if (calculator == null || first != firstDay || last < lastDay) {
+                // First use, or the daily history was replaced rather than extended
+                rebuilds.incrementAndGet();
+                calculator = spec.calculator();
+                columns = calculator.columns();
+                days = new int[Math.max(daily.size(), 16)];
+                values = new double[columns.length][days.length];
+                row = new double[columns.length];
+                size = 0;
+                firstDay = first;
+                from = 0;
+            } else {
+                from = daily.lowerBound(lastDay + 1);
+                if (from == daily.size()) {
+                    hits.incrementAndGet();
+                }
+            }
+            for (int i = from; i < daily.size(); i++) {
+                if (calculator.add(daily.close(i), row)) {
+                    append(daily.epochDay(i));
+                }
+            }
+            foldedBars.addAndGet(daily.size() - from);
+            lastDay = last;
+            return new IndicatorSeries(columns, days, values, 0, size);
+        }
+
+        private void append(int epochDay) {
+            if (size == days.length) {
+                days = Arrays.copyOf(days, size * 2);
+                for (int c = 0; c < values.length; c++) {
+                    values[c] = Arrays.copyOf(values[c], size * 2);
+                }
+            }
+            days[size] = epochDay;
+            for (int c = 0; c < row.length; c++) {
+                values[c][size] = row[c];
+            }
+            size++;
+        }
+    }
+
+    /**
+     * Running state of one indicator. {@link #add} takes the next close and returns false while the
+     * indicator is still warming up; otherwise it has written the new row into {@code out}.
+     */
+    private abstract static class Calculator {
+        abstract String[] columns();
+
+        abstract boolean add(double close, double[] out);
+    }
+
+    /**
+     * Sum and sum of squares over the last {@code length} values.
+     */
+    private static class Window {
+        private final double[] values;
+        private int count;
+        private int next;
+        private double sum;
+        private double sumOfSquares;
+
+        Window(int length) {
+            values = new double[length];
+        }
+
+        void add(double x) {
+            if (count == values.length) {
+                double old = values[next];
+                sum -= old;
+                sumOfSquares -= old * old;
+            } else {
+                count++;
+            }
+            values[next] = x;
+            next = (next + 1) % values.length;
+            sum += x;
+            sumOfSquares += x * x;
+        }
+
+        boolean full() {
+            return count == values.length;
+        }
+
+        double mean() {
+            return sum / count;
+        }
+
+        double standardDeviation() {
+            double mean = mean();
+            return Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+        }
+    }
+
+    /**
+     * Exponential moving average seeded with the simple average of its first {@code period} values.
+     */
+    private static class Ema {
+        private final int period;
+        private final double alpha;
+        private int count;
+        private double value;
+
+        Ema(int period) {
+            this.period = period;
+            alpha = 2.0 / (period + 1);
+        }
+
+        boolean add(double x) {
+            if (count < period) {
+                value += x;
+                if (++count == period) {
+                    value /= period;
+                    return true;
+                }
+                return false;
+            }
+            value += alpha * (x - value);
+            return true;
+        }
+    }
+
+    private static class Sma extends Calculator {
+        private final Window window;
+
+        Sma(int period) {
+            window = new Window(period);
+        }
+
+        @Override
+        String[] columns() {
+            return new String[]{"value"};
+        }
+
+        @Override
+        boolean add(double close, double[] out) {
+            window.add(close);
+            out[0] = window.mean();
+            return window.full();
+        }
+    }
+
+    private static class EmaCalculator extends Calculator {
+        private final Ema ema;
+
+        EmaCalculator(int period) {
+            ema = new Ema(period);
+        }
+
+        @Override
+        String[] columns() {
+            return new String[]{"value"};
+        }
+
+        @Override
+        boolean add(double close, double[] out) {
+            boolean ready = ema.add(close);
+            out[0] = ema.value;
+            return ready;
+        }
+    }
+
+    /**
+     * Wilder's relative strength index.
+     */
+    private static class Rsi extends Calculator {
+        private final int period;
+        private double previous = Double.NaN;
+        private int changes;
+        private double averageGain;
+        private double averageLoss;
+
+        Rsi(int period) {
+            this.period = period;
+        }
+
+        @Override
+        String[] columns() {
+            return new String[]{"value"};
+        }
+
+        @Override
+        boolean add(double close, double[] out) {
+            double change = close - previous;
+            previous = close;
+            if (Double.isNaN(change)) {
+                return false;
+            }
+            double gain = Math.max(change, 0);
+            double loss = Math.max(-change, 0);
+            if (changes < period) {
+                averageGain += gain / period;
+                averageLoss += loss / period;
+                if (++changes < period) {
+                    return false;
+                }
+            } else {
+                averageGain = (averageGain * (period - 1) + gain) / period;
+                averageLoss = (averageLoss * (period - 1) + loss) / period;
+            }
+            out[0] = averageLoss == 0 ? 100 : 100 - 100 / (1 + averageGain / averageLoss);
+            return true;
+        }
+    }
+
+    private static class Macd extends Calculator {
+        private final Ema fast;
+        private final Ema slow;
+        private final Ema signal;
+
+        Macd(int fast, int slow, int signal) {
+            this.fast = new Ema(fast);
+            this.slow = new Ema(slow);
+            this.signal = new Ema(signal);
+        }
+
+        @Override
+        String[] columns() {
+            return new String[]{"macd", "signal", "histogram"};
+        }
+
+        @Override
+        boolean add(double close, double[] out) {
+            fast.add(close);
+            if (!slow.add(close)) {
+                return false;
+            }
+            double macd = fast.value - slow.value;
+            if (!signal.add(macd)) {
+                return false;
+            }
+            out[0] = macd;
+            out[1] = signal.value;
+            out[2] = macd - signal.value;
+            return true;
+        }
+    }
+
+    private static class Bollinger extends Calculator {
+        private final Window window;
+        private final double width;
+
+        Bollinger(int period, double width) {
+            window = new Window(period);
+            this.width = width;
+        }
+
+        @Override
+        String[] columns() {
+            return new String[]{"middle", "upper", "lower"};
+        }
+
+        @Override
+        boolean add(double close, double[] out) {
+            window.add(close);
+            if (!window.full()) {
+                return false;
+            }
+            double middle = window.mean();
+            double band = width * window.standardDeviation();
+            out[0] = middle;
+            out[1] = middle + band;
+            out[2] = middle - band;
+            return true;
+        }
+    }
+}
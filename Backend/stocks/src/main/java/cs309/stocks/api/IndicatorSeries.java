@@ -0,0 +1,88 @@
+package cs309.stocks.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * Values of a technical indicator, one row per bar once the indicator has warmed up, oldest first.
+ * <p>
+ * Most indicators have a single column named {@code value}; MACD and Bollinger bands have several. The
+ * JSON form is a list of {@code {"date", <column>...}} objects, newest first like the price history.
+ */
+@JsonSerialize(using = IndicatorSeries.Serializer.class)
+public class IndicatorSeries {
+    private final String[] columns;
+    private final int[] days;
+    private final double[][] values;
+    private final int offset;
+    private final int size;
+
+    IndicatorSeries(String[] columns, int[] days, double[][] values, int offset, int size) {
+        this.columns = columns;
+        this.days = days;
+        this.values = values;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String[] columns() {
+        return columns.clone();
+    }
+
+    public LocalDate date(int i) {
+        return LocalDate.ofEpochDay(days[offset + i]);
+    }
+
+    public double value(int column, int i) {
+        return values[column][offset + i];
+    }
+
+    /**
+     * The rows from {@code from} to {@code to} (inclusive), sharing this series' storage. A null bound
+     * leaves that end open.
+     */
+    public IndicatorSeries slice(LocalDate from, LocalDate to) {
+        int start = from == null ? 0 : lowerBound((int) from.toEpochDay());
+        int end = to == null ? size : lowerBound((int) to.toEpochDay() + 1);
+        return new IndicatorSeries(columns, days, values, offset + start, Math.max(end - start, 0));
+    }
+
+    private int lowerBound(int epochDay) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days[offset + mid] < epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public static class Serializer extends JsonSerializer<IndicatorSeries> {
+        @Override
+        public void serialize(IndicatorSeries series, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeStartArray();
+            for (int i = series.size() - 1; i >= 0; i--) {
+                gen.writeStartObject();
+                gen.writeStringField("date", series.date(i).toString());
+                for (int c = 0; c < series.columns.length; c++) {
+                    gen.writeNumberField(series.columns[c], series.value(c, i));
+                }
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+        }
+    }
+}
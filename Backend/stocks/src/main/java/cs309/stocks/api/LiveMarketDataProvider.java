@@ -0,0 +1,174 @@
+package cs309.stocks.api;
+
+import java.net.URI;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Market data from FinnHub and FMP, through the shared caches, schedulers and local stores. Quotes for
+ * watched symbols are moved to the latest price from the {@link TradeStream} when it is newer.
+ * <p>
+ * A trade is priced from the stream only if the last streamed trade is at most
+ * TRADE_PRICE_MAX_AGE_MS old; otherwise it gets a current quote from FinnHub.
+ */
+public class LiveMarketDataProvider implements MarketDataProvider {
+    private final FinnHub finnHub = FinnHub.getInstance();
+    private final FMP fmp = FMP.getInstance();
+    private final SymbolIndex symbolIndex = SymbolIndex.getInstance();
+    private final HistoricalPriceStore priceStore = HistoricalPriceStore.getInstance();
+    private final PriceRollups rollups = new PriceRollups();
+    private final IndicatorEngine indicators = new IndicatorEngine();
+    private final NewsCache newsCache = new NewsCache(finnHub::getNews);
+    private final CompanyNewsCache companyNewsCache =
+            new CompanyNewsCache((symbol, from, to) -> finnHub.getCompanyNews(symbol, from.toString(), to.toString()));
+    private final TradeStream tradeStream;
+    private final long maxTradeAgeMillis = Settings.getLong("TRADE_PRICE_MAX_AGE_MS", 15000);
+
+    public LiveMarketDataProvider() {
+        if (Boolean.parseBoolean(Settings.getString("TRADE_STREAM_ENABLED", "true"))) {
+            URI uri = URI.create(Settings.getString("FINNHUB_STREAM_URL", "wss://ws.finnhub.io?token=" + System.getenv("FINNHUB_API_KEY")));
+            tradeStream = new TradeStream(uri, Settings.getInt("TRADE_STREAM_MAX_SYMBOLS", 50));
+        } else {
+            tradeStream = null;
+        }
+    }
+
+    @Override
+    public Quote quote(String symbol) {
+        return quote(symbol, RequestPriority.VALUATION);
+    }
+
+    @Override
+    public Quote quote(String symbol, RequestPriority priority) {
+        TradeStream.LastTrade trade = lastTrade(symbol);
+        if (trade == null) {
+            return finnHub.quote(symbol, priority);
+        }
+        if (priority == RequestPriority.TRADE && !isRecent(trade)) {
+            return withTrade(finnHub.quote(symbol, priority), trade);
+        }
+        // The streamed price is current, so the rest of the quote may come from a cached copy
+        return withTrade(finnHub.quote(symbol, RequestPriority.VALUATION), trade);
+    }
+
+    @Override
+    public Map<String, Quote> quotes(Collection<String> symbols) {
+        return quotes(symbols, RequestPriority.VALUATION);
+    }
+
+    @Override
+    public Map<String, Quote> quotes(Collection<String> symbols, RequestPriority priority) {
+        Map<String, Quote> quotes = new HashMap<>();
+        if (priority == RequestPriority.TRADE) {
+            // Symbols with a recent streamed trade only need the rest of the quote, which may be cached
+            Set<String> streamed = new LinkedHashSet<>();
+            Set<String> fetched = new LinkedHashSet<>();
+            for (String symbol : symbols) {
+                TradeStream.LastTrade trade = lastTrade(symbol);
+                (trade != null && isRecent(trade) ? streamed : fetched).add(symbol);
+            }
+            if (!fetched.isEmpty()) {
+                quotes.putAll(finnHub.quotes(fetched, priority));
+            }
+            if (!streamed.isEmpty()) {
+                quotes.putAll(finnHub.quotes(streamed, RequestPriority.VALUATION));
+            }
+        } else {
+            quotes.putAll(finnHub.quotes(symbols, priority));
+        }
+        quotes.replaceAll((symbol, quote) -> {
+            TradeStream.LastTrade trade = lastTrade(symbol);
+            return trade == null ? quote : withTrade(quote, trade);
+        });
+        return quotes;
+    }
+
+    @Override
+    public Stats stats(String symbol) {
+        return finnHub.stats(symbol);
+    }
+
+    @Override
+    public List<Recommendation> recommendations(String symbol) {
+        return finnHub.recommendations(symbol);
+    }
+
+    @Override
+    public List<Symbol> search(String query, String type, int limit) {
+        return symbolIndex.search(query, type, limit);
+    }
+
+    @Override
+    public List<News> news(String category, int sinceId) {
+        return newsCache.get(category, sinceId);
+    }
+
+    @Override
+    public List<News> companyNews(String symbol, LocalDate from, LocalDate to) {
+        // Checked before the cache, which would otherwise keep an entry for it
+        return companyNewsCache.get(Symbol.check(symbol), from, to);
+    }
+
+    @Override
+    public PriceSeries history(String symbol) {
+        return priceStore.get(symbol);
+    }
+
+    @Override
+    public PriceSeries history(String symbol, Resolution resolution) {
+        return rollups.get(symbol, priceStore.get(symbol), resolution);
+    }
+
+    @Override
+    public IndicatorSeries indicator(String symbol, IndicatorEngine.Spec spec) {
+        return indicators.get(symbol, priceStore.get(symbol), spec);
+    }
+
+    @Override
+    public void watch(String symbol) {
+        if (tradeStream != null) {
+            tradeStream.acquire(symbol);
+        }
+    }
+
+    @Override
+    public void unwatch(String symbol) {
+        if (tradeStream != null) {
+            tradeStream.release(symbol);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("transport", HttpTransport.getInstance().getMetrics());
+        metrics.put("quoteCache", finnHub.getQuoteCache().getMetrics());
+        metrics.put("fundamentalsCache", finnHub.getFundamentals().getMetrics());
+        metrics.put("finnhubScheduler", finnHub.getScheduler().getMetrics());
+        metrics.put("fmpScheduler", fmp.getScheduler().getMetrics());
+        metrics.put("finnhubBreaker", finnHub.getBreaker().getMetrics());
+        metrics.put("fmpBreaker", fmp.getBreaker().getMetrics());
+        metrics.put("priceStore", priceStore.getMetrics());
+        metrics.put("rollups", rollups.getMetrics());
+        metrics.put("indicators", indicators.getMetrics());
+        metrics.put("symbolIndex", symbolIndex.getMetrics());
+        metrics.put("newsCache", newsCache.getMetrics());
+        metrics.put("companyNewsCache", companyNewsCache.getMetrics());
+        if (tradeStream != null) {
+            metrics.put("tradeStream", tradeStream.getMetrics());
+        }
+        return metrics;
+    }
+
+    private TradeStream.LastTrade lastTrade(String symbol) {
+        return tradeStream == null ? null : tradeStream.lastTrade(symbol);
+    }
+
+    private boolean isRecent(TradeStream.LastTrade trade) {
+        return System.currentTimeMillis() - trade.timeMillis() <= maxTradeAgeMillis;
+    }
+
+    private static Quote withTrade(Quote quote, TradeStream.LastTrade trade) {
+        return trade.timeMillis() / 1000 >= quote.getTime() ? quote.withTrade(trade.price(), trade.timeMillis()) : quote;
+    }
+}
@@ -0,0 +1,73 @@
+package cs309.stocks.api;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling of a price series.
+ * <p>
+ * The first and last bars are always kept. The bars between them are split into equal buckets and from
+ * each bucket the bar forming the largest triangle (by date and close) with the bar kept before it and
+ * the average of the next bucket is kept. Peaks and troughs survive, so a chart of a few hundred points
+ * looks like the chart of every bar. Kept bars are returned unchanged.
+ */
+public final class Lttb {
+    private Lttb() {
+    }
+
+    /**
+     * @param maxPoints how many bars to keep; at least 3
+     */
+    public static PriceSeries downsample(PriceSeries series, int maxPoints) {
+        int n = series.size();
+        if (maxPoints < 3) {
+            throw new IllegalArgumentException("maxPoints must be at least 3");
+        }
+        if (n <= maxPoints) {
+            return series;
+        }
+
+        PriceSeries.Builder builder = new PriceSeries.Builder(maxPoints);
+        add(builder, series, 0);
+        double bucketSize = (double) (n - 2) / (maxPoints - 2);
+        int kept = 0;
+        for (int bucket = 0; bucket < maxPoints - 2; bucket++) {
+            int start = (int) (bucket * bucketSize) + 1;
+            int end = (int) ((bucket + 1) * bucketSize) + 1;
+
+            // Average of the next bucket, or the last bar for the final bucket
+            int nextStart = end;
+            int nextEnd = Math.min((int) ((bucket + 2) * bucketSize) + 1, n);
+            if (nextStart >= n - 1) {
+                nextStart = n - 1;
+                nextEnd = n;
+            }
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += series.epochDay(i);
+                avgY += series.close(i);
+            }
+            avgX /= nextEnd - nextStart;
+            avgY /= nextEnd - nextStart;
+
+            double keptX = series.epochDay(kept);
+            double keptY = series.close(kept);
+            double largest = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                double area = Math.abs((keptX - avgX) * (series.close(i) - keptY)
+                        - (keptX - series.epochDay(i)) * (avgY - keptY));
+                if (area > largest) {
+                    largest = area;
+                    chosen = i;
+                }
+            }
+            add(builder, series, chosen);
+            kept = chosen;
+        }
+        add(builder, series, n - 1);
+        return builder.build();
+    }
+
+    private static void add(PriceSeries.Builder builder, PriceSeries series, int i) {
+        builder.add(series.epochDay(i), series.open(i), series.high(i), series.low(i), series.close(i));
+    }
+}
@@ -0,0 +1,165 @@
+package cs309.stocks.api;
+
+import java.time.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * US equity market calendar: regular hours, half days and holidays.
+ * <p>
+ * Session open and close times are precomputed as epoch seconds for every day in a window around
+ * today, so {@link #isOpen(Instant)} is a couple of array reads. The holiday list and today's status are
+ * refreshed from FinnHub in the background; until the first refresh succeeds (or if it keeps failing)
+ * the calendar falls back to regular weekday hours.
+ */
+public class MarketCalendar {
+    public static final ZoneId ZONE = ZoneId.of("America/New_York");
+    private static final LocalTime OPEN = LocalTime.of(9, 30);
+    private static final LocalTime CLOSE = LocalTime.of(16, 0);
+    private static final int DAYS_BEFORE = 30;
+    private static final int DAYS_AFTER = 400;
+    // Trading sessions never cross midnight, so a fixed UTC-5 offset always lands on the right local day
+    private static final long DAY_SHIFT_SECONDS = 5 * 3600;
+    private static final long RETRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static MarketCalendar instance;
+
+    private final ScheduledExecutorService refresher;
+    private final long refreshMillis;
+    private volatile Sessions sessions;
+
+    private MarketCalendar() {
+        sessions = new Sessions(LocalDate.now(ZONE), Map.of());
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "market-calendar");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refreshMillis = Settings.getLong("MARKET_CALENDAR_REFRESH_MS", TimeUnit.HOURS.toMillis(6));
+        refresher.execute(this::refresh);
+    }
+
+    public static synchronized MarketCalendar getInstance() {
+        if (instance == null) {
+            instance = new MarketCalendar();
+        }
+        return instance;
+    }
+
+    /**
+     * Whether the regular session is open at {@code time}.
+     */
+    public boolean isOpen(Instant time) {
+        long second = time.getEpochSecond();
+        Sessions current = sessions;
+        int index = (int) (Math.floorDiv(second - DAY_SHIFT_SECONDS, 86400) - current.firstDay);
+        if (index < 0 || index >= current.open.length) {
+            ZonedDateTime local = time.atZone(ZONE);
+            long[] session = session(local.toLocalDate(), Map.of());
+            return session != null && second >= session[0] && second < session[1];
+        }
+        return second >= current.open[index] && second < current.close[index];
+    }
+
+    /**
+     * The most recent trading day whose session has already closed at {@code time}.
+     */
+    public LocalDate lastCompletedTradingDay(Instant time) {
+        Sessions current = sessions;
+        LocalDate day = time.atZone(ZONE).toLocalDate();
+        for (int i = 0; i < 30; i++, day = day.minusDays(1)) {
+            int index = (int) (day.toEpochDay() - current.firstDay);
+            long close;
+            if (index < 0 || index >= current.close.length) {
+                long[] session = session(day, Map.of());
+                close = session == null ? 0 : session[1];
+            } else {
+                close = current.close[index];
+            }
+            if (close != 0 && close <= time.getEpochSecond()) {
+                return day;
+            }
+        }
+        return day;
+    }
+
+    /**
+     * Reloads the calendar and schedules the next reload: the regular interval after a success, a
+     * shorter one after a failure. This is the only place a reload is scheduled, so failures never pile
+     * up extra ones.
+     */
+    private void refresh() {
+        long next = RETRY_MILLIS;
+        try {
+            FinnHub finnHub = FinnHub.getInstance();
+            Map<LocalDate, String> exceptions = new HashMap<>();
+            MarketHolidays holidays = finnHub.marketHolidays();
+            if (holidays.getData() != null) {
+                for (MarketHoliday holiday : holidays.getData()) {
+                    exceptions.put(LocalDate.parse(holiday.getAtDate()), holiday.getTradingHour() == null ? "" : holiday.getTradingHour());
+                }
+            }
+
+            MarketStatus status = finnHub.marketStatus();
+            LocalDate today = LocalDate.now(ZONE);
+            if (status.getHoliday() != null && !status.isOpen() && !exceptions.containsKey(today)) {
+                exceptions.put(today, "");
+            }
+
+            sessions = new Sessions(today, exceptions);
+            next = refreshMillis;
+        } catch (RuntimeException e) {
+            // Keep the current table and try again sooner than the regular schedule
+            e.printStackTrace();
+        } finally {
+            refresher.schedule(this::refresh, next, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Open and close epoch seconds of the session on {@code day}, or null if the market is closed.
+     *
+     * @param exceptions holidays keyed by date; an empty value means closed all day, otherwise
+     *                   the shortened trading hours as {@code HH:mm-HH:mm}
+     */
+    private static long[] session(LocalDate day, Map<LocalDate, String> exceptions) {
+        if (day.getDayOfWeek() == DayOfWeek.SATURDAY || day.getDayOfWeek() == DayOfWeek.SUNDAY) {
+            return null;
+        }
+        LocalTime open = OPEN;
+        LocalTime close = CLOSE;
+        String hours = exceptions.get(day);
+        if (hours != null) {
+            String[] parts = hours.split("-");
+            if (parts.length != 2) {
+                return null;
+            }
+            open = LocalTime.parse(parts[0].strip());
+            close = LocalTime.parse(parts[1].strip());
+        }
+        return new long[]{day.atTime(open).atZone(ZONE).toEpochSecond(), day.atTime(close).atZone(ZONE).toEpochSecond()};
+    }
+
+    private static class Sessions {
+        final long firstDay;
+        final long[] open;
+        final long[] close;
+
+        Sessions(LocalDate today, Map<LocalDate, String> exceptions) {
+            LocalDate first = today.minusDays(DAYS_BEFORE);
+            firstDay = first.toEpochDay();
+            open = new long[DAYS_BEFORE + DAYS_AFTER];
+            close = new long[DAYS_BEFORE + DAYS_AFTER];
+            for (int i = 0; i < open.length; i++) {
+                long[] session = session(first.plusDays(i), exceptions);
+                if (session != null) {
+                    open[i] = session[0];
+                    close[i] = session[1];
+                }
+            }
+        }
+    }
+}
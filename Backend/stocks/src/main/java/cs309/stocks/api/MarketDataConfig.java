@@ -0,0 +1,35 @@
+package cs309.stocks.api;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Picks the {@link MarketDataProvider} from the MARKET_DATA_PROVIDER environment variable:
+ * {@code live} (the default) uses FinnHub and FMP, {@code synthetic} generates prices locally so the
+ * application can be run and load tested without API keys or quota.
+ */
+@Configuration
+public class MarketDataConfig implements WebMvcConfigurer {
+    @Bean
+    public MarketDataProvider marketDataProvider() {
+        String provider = Settings.getString("MARKET_DATA_PROVIDER", "live");
+        return switch (provider) {
+            case "live" -> new LiveMarketDataProvider();
+            case "synthetic" -> new SyntheticMarketDataProvider(Settings.getLong("SYNTHETIC_SEED", 42));
+            default -> throw new IllegalStateException("Unknown MARKET_DATA_PROVIDER '" + provider + "'");
+        };
+    }
+
+    /**
+     * Adds the binary price series encoding after the JSON converter, so JSON stays the default and the
+     * binary form is only used when a client asks for it.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new PriceSeriesBinaryConverter());
+    }
+}
@@ -0,0 +1,81 @@
+package cs309.stocks.api;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything the application needs from a market data source. Controllers, sockets and entities only
+ * talk to this interface; which implementation backs it is chosen by {@link MarketDataConfig}.
+ * <p>
+ * Methods that fetch data for a symbol throw {@link IllegalArgumentException} when it is not a valid
+ * ticker ({@link Symbol#isValid}), before anything is fetched. Price history is empty for one instead.
+ */
+public interface MarketDataProvider {
+    /**
+     * Current quote for {@code symbol}, for display and valuation.
+     */
+    Quote quote(String symbol);
+
+    Quote quote(String symbol, RequestPriority priority);
+
+    /**
+     * Quotes for several symbols at once, keyed by the requested symbol.
+     */
+    Map<String, Quote> quotes(Collection<String> symbols);
+
+    Map<String, Quote> quotes(Collection<String> symbols, RequestPriority priority);
+
+    Stats stats(String symbol);
+
+    List<Recommendation> recommendations(String symbol);
+
+    /**
+     * Symbols whose ticker or description match {@code query}, best matches first.
+     *
+     * @param type only return symbols of this type (e.g. "Common Stock"), or null for any type
+     */
+    List<Symbol> search(String query, String type, int limit);
+
+    /**
+     * Market news in {@code category}, newest first.
+     *
+     * @param sinceId only return articles with a higher id than this (0 for all)
+     */
+    List<News> news(String category, int sinceId);
+
+    /**
+     * News about {@code symbol} published between {@code from} and {@code to} (inclusive), newest first.
+     */
+    List<News> companyNews(String symbol, LocalDate from, LocalDate to);
+
+    /**
+     * Daily price history for {@code symbol}, oldest bar first.
+     */
+    PriceSeries history(String symbol);
+
+    /**
+     * Price history for {@code symbol} at {@code resolution}, oldest bar first. Bars longer than a day
+     * are dated by the first trading day of their period.
+     */
+    PriceSeries history(String symbol, Resolution resolution);
+
+    /**
+     * A technical indicator over {@code symbol}'s daily closes, oldest value first.
+     */
+    IndicatorSeries indicator(String symbol, IndicatorEngine.Spec spec);
+
+    /**
+     * Registers interest in live prices for {@code symbol}, e.g. because a position in it was opened.
+     * Calls are counted, so every {@code watch} must be matched by one {@link #unwatch}.
+     */
+    void watch(String symbol);
+
+    void unwatch(String symbol);
+
+    /**
+     * Counters describing the provider's caches and upstream clients.
+     */
+    Map<String, Object> getMetrics();
+}
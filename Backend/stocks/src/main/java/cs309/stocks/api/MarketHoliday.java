@@ -4,11 +4,11 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
-import java.util.Map;
-
 @Getter
 @Setter
 @NoArgsConstructor
-public class AllStats {
-    Map<String, ?> metric;
+public class MarketHoliday {
+    private String eventName;
+    private String atDate;
+    private String tradingHour;
 }
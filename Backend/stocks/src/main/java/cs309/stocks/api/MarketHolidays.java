@@ -9,7 +9,8 @@ import java.util.List;
 @Getter
 @Setter
 @NoArgsConstructor
-public class HistoricalData {
-    private String symbol;
-    private List<DayStats> historical;
+public class MarketHolidays {
+    private String exchange;
+    private String timezone;
+    private List<MarketHoliday> data;
 }
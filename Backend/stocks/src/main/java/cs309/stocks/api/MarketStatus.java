@@ -0,0 +1,19 @@
+package cs309.stocks.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+public class MarketStatus {
+    private String exchange;
+    private String holiday;
+    @JsonProperty("isOpen")
+    private boolean open;
+    private String session;
+    private String timezone;
+    private long t;
+}
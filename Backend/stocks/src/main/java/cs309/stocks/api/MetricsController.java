@@ -0,0 +1,52 @@
+package cs309.stocks.api;
+
+import cs309.stocks.Portfolios.PortfolioHistory;
+import cs309.stocks.Stocks.IdempotencyCache;
+import cs309.stocks.Stocks.OrderPipeline;
+import cs309.stocks.Stocks.TradeJournal;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/metrics")
+public class MetricsController {
+    @Autowired
+    private MarketDataProvider marketData;
+    @Autowired
+    private OrderPipeline orderPipeline;
+    @Autowired
+    private IdempotencyCache idempotencyCache;
+    @Autowired
+    private TradeJournal tradeJournal;
+    @Autowired
+    private PortfolioHistory portfolioHistory;
+
+    @GetMapping("/market-data")
+    public Map<String, Object> getMarketDataMetrics() {
+        return marketData.getMetrics();
+    }
+
+    @GetMapping("/orders")
+    public Map<String, Number> getOrderMetrics() {
+        return orderPipeline.getMetrics();
+    }
+
+    @GetMapping("/idempotency")
+    public Map<String, Number> getIdempotencyMetrics() {
+        return idempotencyCache.getMetrics();
+    }
+
+    @GetMapping("/trade-journal")
+    public Map<String, Number> getTradeJournalMetrics() {
+        return tradeJournal.getMetrics();
+    }
+
+    @GetMapping("/portfolio-history")
+    public Map<String, Number> getPortfolioHistoryMetrics() {
+        return portfolioHistory.getMetrics();
+    }
+}
@@ -0,0 +1,162 @@
+package cs309.stocks.api;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Market news per category, refreshed incrementally.
+ * <p>
+ * Each category keeps its newest articles, newest first, up to a fixed limit. A refresh asks FinnHub
+ * only for articles newer than the highest id already held (the feed's {@code minId} cursor), so old
+ * articles are never downloaded or parsed again. Articles are stored once by id, however many
+ * categories list them, and dropped once no category does.
+ * <p>
+ * Only FinnHub's own categories are accepted, so client input cannot add feeds.
+ */
+public class NewsCache {
+    public static final Set<String> CATEGORIES = Set.of("general", "forex", "crypto", "merger");
+    private static final Comparator<News> NEWEST_FIRST =
+            Comparator.comparingLong(News::getDatetime).thenComparingInt(News::getId).reversed();
+
+    private final BiFunction<String, Integer, List<News>> loader;
+    private final int limit;
+    private final long ttlMillis;
+    private final Map<String, Feed> feeds = new ConcurrentHashMap<>();
+    private final Map<Integer, News> articles = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong fetchedArticles = new AtomicLong();
+
+    /**
+     * @param loader fetches the articles in a category with an id above the given one
+     */
+    public NewsCache(BiFunction<String, Integer, List<News>> loader) {
+        this.loader = loader;
+        limit = Settings.getInt("NEWS_CATEGORY_LIMIT", 100);
+        ttlMillis = Settings.getLong("NEWS_TTL_MS", 60000);
+    }
+
+    /**
+     * Articles in {@code category}, newest first.
+     *
+     * @param sinceId only return articles with a higher id than this, so clients can poll for new ones
+     * @throws IllegalArgumentException if {@code category} is not one of {@link #CATEGORIES}
+     */
+    public List<News> get(String category, int sinceId) {
+        Feed feed = feeds.computeIfAbsent(checkCategory(category), Feed::new);
+        News[] items = feed.current();
+        List<News> result = new ArrayList<>();
+        for (News news : items) {
+            if (news.getId() > sinceId) {
+                result.add(news);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The category in the form FinnHub expects.
+     *
+     * @throws IllegalArgumentException if it is not one of {@link #CATEGORIES}
+     */
+    public static String checkCategory(String category) {
+        String key = category.strip().toLowerCase(Locale.ROOT);
+        if (!CATEGORIES.contains(key)) {
+            throw new IllegalArgumentException("Unknown category: " + category + " (expected general, forex, crypto or merger)");
+        }
+        return key;
+    }
+
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("categories", feeds.size());
+        metrics.put("articles", articles.size());
+        metrics.put("hits", hits.get());
+        metrics.put("refreshes", refreshes.get());
+        metrics.put("fetchedArticles", fetchedArticles.get());
+        return metrics;
+    }
+
+    private class Feed {
+        private final String category;
+        private volatile News[] items = new News[0];
+        private int maxId;
+        private long fetchedAt;
+        private boolean loaded;
+
+        Feed(String category) {
+            this.category = category;
+        }
+
+        /**
+         * The feed's articles, refreshed first if they are older than the TTL. A failed refresh keeps
+         * serving the articles already held.
+         */
+        synchronized News[] current() {
+            long now = System.currentTimeMillis();
+            if (loaded && now - fetchedAt < ttlMillis) {
+                hits.incrementAndGet();
+                return items;
+            }
+            List<News> fresh;
+            try {
+                refreshes.incrementAndGet();
+                fresh = loader.apply(category, maxId);
+            } catch (RuntimeException e) {
+                if (!loaded) {
+                    throw e;
+                }
+                return items;
+            }
+            fetchedAt = now;
+            loaded = true;
+            fetchedArticles.addAndGet(fresh.size());
+            merge(fresh);
+            return items;
+        }
+
+        private void merge(List<News> fresh) {
+            if (fresh.isEmpty()) {
+                return;
+            }
+            Set<Integer> held = new HashSet<>();
+            List<News> merged = new ArrayList<>(items.length + fresh.size());
+            for (News news : items) {
+                held.add(news.getId());
+                merged.add(news);
+            }
+            for (News news : fresh) {
+                if (held.add(news.getId())) {
+                    merged.add(articles.merge(news.getId(), news, (stored, ignored) -> stored));
+                }
+                maxId = Math.max(maxId, news.getId());
+            }
+            merged.sort(NEWEST_FIRST);
+
+            List<News> dropped = merged.size() > limit ? merged.subList(limit, merged.size()) : List.of();
+            News[] kept = merged.subList(0, Math.min(limit, merged.size())).toArray(News[]::new);
+            items = kept;
+            for (News news : dropped) {
+                if (!listedElsewhere(news.getId())) {
+                    articles.remove(news.getId());
+                }
+            }
+        }
+
+        private boolean listedElsewhere(int id) {
+            for (Feed other : feeds.values()) {
+                if (other != this) {
+                    for (News news : other.items) {
+                        if (news.getId() == id) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+}
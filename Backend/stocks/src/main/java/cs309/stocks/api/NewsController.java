@@ -6,25 +6,26 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
+import java.time.ZoneOffset;
 
 @RestController
 @RequestMapping("/news")
 @Tag(name = "News API", description = "API for fetching market news from Finnhub.")
 public class NewsController {
 
-    private final FinnHub finnhub;
+    private final MarketDataProvider marketData;
 
     @Autowired
-    public NewsController() {
-        this.finnhub = FinnHub.getInstance();
+    public NewsController(MarketDataProvider marketData) {
+        this.marketData = marketData;
     }
 
     @ApiResponses({
@@ -69,7 +70,7 @@ public class NewsController {
                             schema = @Schema(
                                     type = "string",
                                     description = "Error message if the request is invalid",
-                                    example = "Invalid category"
+                                    example = "Unknown category: sports (expected general, forex, crypto or merger)"
                             )
                     )
             ),
@@ -87,10 +88,13 @@ public class NewsController {
     })
 
     @GetMapping
-    public List<News> getNewsByCategory(
-            @RequestParam(required = false, defaultValue = "general") String category) {
+    public ResponseEntity<?> getNewsByCategory(
+            @RequestParam(required = false, defaultValue = "general") String category,
+            @RequestParam(required = false, defaultValue = "0") int sinceId) {
         try {
-            return finnhub.getNews(category);
+            return ResponseEntity.ok(marketData.news(category, sinceId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         } catch (Exception e) {
             throw new RuntimeException("Error fetching news: " + e.getMessage(), e);
         }
@@ -156,17 +160,15 @@ public class NewsController {
     })
 
     @GetMapping("/company")
-    public List<News> getCompanyNews(@RequestParam String symbol) {
+    public ResponseEntity<?> getCompanyNews(@RequestParam String symbol) {
         try {
-            // Get current date and calculate date range
-            LocalDate currentDate = LocalDate.now();
+            // Company news is bucketed by UTC day, so the window must end on today's UTC date
+            LocalDate currentDate = LocalDate.now(ZoneOffset.UTC);
             LocalDate startDate = currentDate.minusDays(5);
 
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-            String from = startDate.format(formatter);
-            String to = currentDate.format(formatter);
-
-            return finnhub.getCompanyNews(symbol, from, to);
+            return ResponseEntity.ok(marketData.companyNews(symbol, startDate, currentDate));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
         } catch (Exception e) {
             throw new RuntimeException("Error fetching company news: " + e.getMessage(), e);
         }
@@ -0,0 +1,163 @@
+package cs309.stocks.api;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Weekly, monthly and yearly OHLC bars kept per symbol alongside its daily history.
+ * <p>
+ * The roll-ups are built once from the daily bars and afterwards only the daily bars newer than the
+ * last one folded in are added: a bar in the current period updates that period's high, low and close
+ * in place, a bar in a new period appends one. Each roll-up is stored oldest first like the daily
+ * series, so a range at any resolution is a binary search and a slice. The roll-ups of the
+ * ROLLUP_CACHE_SIZE most recently used symbols are kept.
+ */
+public class PriceRollups {
+    private static final Resolution[] ROLLED_UP = {Resolution.WEEK, Resolution.MONTH, Resolution.YEAR};
+
+    private final Map<String, SymbolRollups> symbols;
+
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong foldedBars = new AtomicLong();
+
+    public PriceRollups() {
+        this(Settings.getInt("ROLLUP_CACHE_SIZE", 1000));
+    }
+
+    public PriceRollups(int maxSymbols) {
+        symbols = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, SymbolRollups> eldest) {
+                return size() > maxSymbols;
+            }
+        };
+    }
+
+    /**
+     * The bars of {@code daily} at {@code resolution}, each dated by the first trading day of its period.
+     *
+     * @param daily the symbol's current daily history, oldest bar first
+     */
+    public PriceSeries get(String symbol, PriceSeries daily, Resolution resolution) {
+        if (resolution == Resolution.DAY || daily.isEmpty()) {
+            return daily;
+        }
+        SymbolRollups rollups;
+        synchronized (symbols) {
+            rollups = symbols.computeIfAbsent(symbol.toUpperCase(Locale.ROOT), k -> new SymbolRollups());
+        }
+        return rollups.get(daily, resolution);
+    }
+
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        synchronized (symbols) {
+            metrics.put("symbols", symbols.size());
+        }
+        metrics.put("rebuilds", rebuilds.get());
+        metrics.put("foldedBars", foldedBars.get());
+        return metrics;
+    }
+
+    private class SymbolRollups {
+        private final Bars[] bars = new Bars[ROLLED_UP.length];
+        private int firstDay;
+        private int lastDay;
+
+        synchronized PriceSeries get(PriceSeries daily, Resolution resolution) {
+            int first = daily.epochDay(0);
+            int last = daily.epochDay(daily.size() - 1);
+            int from;
+            if (bars[0] == null || first != firstDay || last < lastDay) {
+                // First use, or the daily history was replaced rather than extended
+                rebuilds.incrementAndGet();
+                for (int i = 0; i < ROLLED_UP.length; i++) {
+                    bars[i] = new Bars(ROLLED_UP[i]);
+                }
+                firstDay = first;
+                from = 0;
+            } else {
+                from = daily.lowerBound(lastDay + 1);
+            }
+            for (int i = from; i < daily.size(); i++) {
+                for (Bars b : bars) {
+                    b.fold(daily, i);
+                }
+            }
+            foldedBars.addAndGet(daily.size() - from);
+            lastDay = last;
+
+            for (int i = 0; i < ROLLED_UP.length; i++) {
+                if (ROLLED_UP[i] == resolution) {
+                    return bars[i].view();
+                }
+            }
+            throw new IllegalArgumentException("No roll-up for " + resolution);
+        }
+    }
+
+    /**
+     * Growable OHLC columns for one resolution. Views share the arrays, so once one has been handed out
+     * the arrays are copied before the last bar is changed in place.
+     */
+    private static class Bars {
+        private final Resolution resolution;
+        private int[] days = new int[16];
+        private int[] buckets = new int[16];
+        private double[] open = new double[16];
+        private double[] high = new double[16];
+        private double[] low = new double[16];
+        private double[] close = new double[16];
+        private int size;
+        private boolean shared;
+
+        Bars(Resolution resolution) {
+            this.resolution = resolution;
+        }
+
+        void fold(PriceSeries daily, int i) {
+            int bucket = resolution.bucket(daily.epochDay(i));
+            if (size > 0 && buckets[size - 1] == bucket) {
+                if (shared) {
+                    copy(days.length);
+                }
+                int last = size - 1;
+                high[last] = Math.max(high[last], daily.high(i));
+                low[last] = Math.min(low[last], daily.low(i));
+                close[last] = daily.close(i);
+                return;
+            }
+            if (size == days.length) {
+                copy(size * 2);
+            }
+            days[size] = daily.epochDay(i);
+            buckets[size] = bucket;
+            open[size] = daily.open(i);
+            high[size] = daily.high(i);
+            low[size] = daily.low(i);
+            close[size] = daily.close(i);
+            size++;
+        }
+
+        PriceSeries view() {
+            shared = true;
+            return new PriceSeries(IntBuffer.wrap(days, 0, size), DoubleBuffer.wrap(open, 0, size), DoubleBuffer.wrap(high, 0, size),
+                    DoubleBuffer.wrap(low, 0, size), DoubleBuffer.wrap(close, 0, size), size);
+        }
+
+        private void copy(int capacity) {
+            days = Arrays.copyOf(days, capacity);
+            buckets = Arrays.copyOf(buckets, capacity);
+            open = Arrays.copyOf(open, capacity);
+            high = Arrays.copyOf(high, capacity);
+            low = Arrays.copyOf(low, capacity);
+            close = Arrays.copyOf(close, capacity);
+            shared = false;
+        }
+    }
+}
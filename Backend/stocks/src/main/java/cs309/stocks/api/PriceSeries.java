@@ -0,0 +1,227 @@
+package cs309.stocks.api;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Daily price history stored as primitive columns, oldest bar first.
+ * <p>
+ * Dates are kept as epoch days. The JSON form is the same list of
+ * {@code {"date", "open", "high", "low", "close"}} objects FMP returns (newest first), so clients
+ * that used to receive {@link DayStats} see no difference.
+ */
+@JsonSerialize(using = PriceSeries.Serializer.class)
+public class PriceSeries {
+    private final IntBuffer days;
+    private final DoubleBuffer open;
+    private final DoubleBuffer high;
+    private final DoubleBuffer low;
+    private final DoubleBuffer close;
+    private final int size;
+
+    public PriceSeries(IntBuffer days, DoubleBuffer open, DoubleBuffer high, DoubleBuffer low, DoubleBuffer close, int size) {
+        this.days = days;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.size = size;
+    }
+
+    public static PriceSeries empty() {
+        return new Builder(0).build();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int epochDay(int i) {
+        return days.get(i);
+    }
+
+    public LocalDate date(int i) {
+        return LocalDate.ofEpochDay(days.get(i));
+    }
+
+    public double open(int i) {
+        return open.get(i);
+    }
+
+    public double high(int i) {
+        return high.get(i);
+    }
+
+    public double low(int i) {
+        return low.get(i);
+    }
+
+    public double close(int i) {
+        return close.get(i);
+    }
+
+    /**
+     * Index of the first bar on or after {@code epochDay}, or {@link #size()} if there is none.
+     */
+    public int lowerBound(int epochDay) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days.get(mid) < epochDay) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The bars from {@code from} to {@code to} (inclusive), sharing this series' storage. A null bound
+     * leaves that end open.
+     */
+    public PriceSeries slice(LocalDate from, LocalDate to) {
+        int start = from == null ? 0 : lowerBound((int) from.toEpochDay());
+        int end = to == null ? size : lowerBound((int) to.toEpochDay() + 1);
+        if (start == 0 && end == size) {
+            return this;
+        }
+        int length = Math.max(end - start, 0);
+        return new PriceSeries(days.slice(start, length), open.slice(start, length), high.slice(start, length),
+                low.slice(start, length), close.slice(start, length), length);
+    }
+
+    /**
+     * Collects bars in the order they are parsed and sorts them oldest first on {@link #build()}.
+     */
+    public static class Builder {
+        private int[] days;
+        private double[] open;
+        private double[] high;
+        private double[] low;
+        private double[] close;
+        private int size;
+        private boolean ascending = true;
+
+        public Builder(int capacity) {
+            capacity = Math.max(capacity, 16);
+            days = new int[capacity];
+            open = new double[capacity];
+            high = new double[capacity];
+            low = new double[capacity];
+            close = new double[capacity];
+        }
+
+        public Builder add(int epochDay, double o, double h, double l, double c) {
+            if (size == days.length) {
+                int capacity = size * 2;
+                days = Arrays.copyOf(days, capacity);
+                open = Arrays.copyOf(open, capacity);
+                high = Arrays.copyOf(high, capacity);
+                low = Arrays.copyOf(low, capacity);
+                close = Arrays.copyOf(close, capacity);
+            }
+            if (size > 0 && epochDay < days[size - 1]) {
+                ascending = false;
+            }
+            days[size] = epochDay;
+            open[size] = o;
+            high[size] = h;
+            low[size] = l;
+            close[size] = c;
+            size++;
+            return this;
+        }
+
+        public PriceSeries build() {
+            if (!ascending) {
+                sort();
+            }
+            return new PriceSeries(IntBuffer.wrap(days, 0, size), DoubleBuffer.wrap(open, 0, size), DoubleBuffer.wrap(high, 0, size),
+                    DoubleBuffer.wrap(low, 0, size), DoubleBuffer.wrap(close, 0, size), size);
+        }
+
+        private void sort() {
+            // FMP lists newest first, so the common case is a plain reversal
+            boolean descending = true;
+            for (int i = 1; i < size && descending; i++) {
+                descending = days[i] < days[i - 1];
+            }
+            if (descending) {
+                for (int i = 0, j = size - 1; i < j; i++, j--) {
+                    swap(i, j);
+                }
+                return;
+            }
+
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(days[a], days[b]));
+            int[] d = new int[size];
+            double[] o = new double[size], h = new double[size], l = new double[size], c = new double[size];
+            for (int i = 0; i < size; i++) {
+                int k = order[i];
+                d[i] = days[k];
+                o[i] = open[k];
+                h[i] = high[k];
+                l[i] = low[k];
+                c[i] = close[k];
+            }
+            days = d;
+            open = o;
+            high = h;
+            low = l;
+            close = c;
+        }
+
+        private void swap(int i, int j) {
+            int d = days[i];
+            days[i] = days[j];
+            days[j] = d;
+            double t = open[i];
+            open[i] = open[j];
+            open[j] = t;
+            t = high[i];
+            high[i] = high[j];
+            high[j] = t;
+            t = low[i];
+            low[i] = low[j];
+            low[j] = t;
+            t = close[i];
+            close[i] = close[j];
+            close[j] = t;
+        }
+    }
+
+    public static class Serializer extends JsonSerializer<PriceSeries> {
+        @Override
+        public void serialize(PriceSeries series, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+            gen.writeStartArray();
+            for (int i = series.size() - 1; i >= 0; i--) {
+                gen.writeStartObject();
+                gen.writeStringField("date", series.date(i).toString());
+                gen.writeNumberField("open", series.open(i));
+                gen.writeNumberField("high", series.high(i));
+                gen.writeNumberField("low", series.low(i));
+                gen.writeNumberField("close", series.close(i));
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package cs309.stocks.api;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Compact binary form of a {@link PriceSeries}, sent when the client asks for {@link #MEDIA_TYPE}.
+ * JSON stays the default for every other Accept header.
+ * <p>
+ * Bars are sent oldest first as columns of variable-length integers:
+ * <pre>
+ *   version    byte (1)
+ *   count      varint
+ *   scale      varint   prices are sent as round(price * scale)
+ *   days       zigzag varint each: the first epoch day, then the gap to the previous bar
+ *   prices     per bar, zigzag varints: close minus the previous close (0 before the first bar),
+ *              then open, high and low minus this bar's close
+ * </pre>
+ * Consecutive trading days are one byte apart and neighbouring prices differ by little, so most
+ * values take one or two bytes and a bar costs a dozen bytes or so instead of about a hundred in JSON.
+ * Prices are rounded to 1/{@value #SCALE}.
+ */
+public class PriceSeriesBinaryConverter extends AbstractHttpMessageConverter<PriceSeries> {
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType("application/vnd.stockdojo.price-series");
+    private static final int VERSION = 1;
+    public static final int SCALE = 10000;
+
+    public PriceSeriesBinaryConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return PriceSeries.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected PriceSeries readInternal(Class<? extends PriceSeries> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Price series cannot be uploaded", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(PriceSeries series, HttpOutputMessage outputMessage) throws IOException {
+        byte[] body = encode(series);
+        outputMessage.getHeaders().setContentLength(body.length);
+        outputMessage.getBody().write(body);
+    }
+
+    public static byte[] encode(PriceSeries series) {
+        int n = series.size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + n * 12);
+        out.write(VERSION);
+        writeVarint(out, n);
+        writeVarint(out, SCALE);
+        int previousDay = 0;
+        for (int i = 0; i < n; i++) {
+            int day = series.epochDay(i);
+            writeVarint(out, zigzag(day - previousDay));
+            previousDay = day;
+        }
+        long previousClose = 0;
+        for (int i = 0; i < n; i++) {
+            long close = scaled(series.close(i));
+            writeVarint(out, zigzag(i == 0 ? close : close - previousClose));
+            writeVarint(out, zigzag(scaled(series.open(i)) - close));
+            writeVarint(out, zigzag(scaled(series.high(i)) - close));
+            writeVarint(out, zigzag(scaled(series.low(i)) - close));
+            previousClose = close;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reverses {@link #encode}, for tests and Java clients.
+     */
+    public static PriceSeries decode(byte[] data) {
+        int[] at = {0};
+        if (data.length == 0 || data[at[0]++] != VERSION) {
+            throw new IllegalArgumentException("Unsupported price series encoding");
+        }
+        int n = (int) readVarint(data, at);
+        double scale = readVarint(data, at);
+        int[] days = new int[n];
+        int day = 0;
+        for (int i = 0; i < n; i++) {
+            day += (int) unzigzag(readVarint(data, at));
+            days[i] = day;
+        }
+        PriceSeries.Builder builder = new PriceSeries.Builder(n);
+        long close = 0;
+        for (int i = 0; i < n; i++) {
+            close += unzigzag(readVarint(data, at));
+            long open = close + unzigzag(readVarint(data, at));
+            long high = close + unzigzag(readVarint(data, at));
+            long low = close + unzigzag(readVarint(data, at));
+            builder.add(days[i], open / scale, high / scale, low / scale, close / scale);
+        }
+        return builder.build();
+    }
+
+    private static long scaled(double price) {
+        return Math.round(price * SCALE);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] data, int[] at) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (at[0] >= data.length) {
+                throw new IllegalArgumentException("Truncated price series");
+            }
+            byte b = data[at[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint in price series");
+    }
+}
@@ -0,0 +1,94 @@
+package cs309.stocks.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads an FMP {@code historical-price-full} response token by token, writing each bar straight into a
+ * {@link PriceSeries.Builder} so neither the response text nor per-day objects are ever materialized.
+ */
+public final class PriceSeriesParser {
+    private PriceSeriesParser() {
+    }
+
+    public static PriceSeries parse(InputStream in) throws IOException {
+        PriceSeries.Builder builder = new PriceSeries.Builder(256);
+        try (JsonParser parser = HttpTransport.mapper().getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return builder.build();
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("historical".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readBar(parser, builder);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private static void readBar(JsonParser parser, PriceSeries.Builder builder) throws IOException {
+        int day = Integer.MIN_VALUE;
+        double open = Double.NaN, high = Double.NaN, low = Double.NaN, close = Double.NaN;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "date" -> day = parseEpochDay(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                case "open" -> open = parser.getValueAsDouble(Double.NaN);
+                case "high" -> high = parser.getValueAsDouble(Double.NaN);
+                case "low" -> low = parser.getValueAsDouble(Double.NaN);
+                case "close" -> close = parser.getValueAsDouble(Double.NaN);
+                default -> {
+                    if (value.isStructStart()) {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        if (day != Integer.MIN_VALUE) {
+            builder.add(day, open, high, low, close);
+        }
+    }
+
+    /**
+     * Parses a {@code yyyy-MM-dd} date into days since 1970-01-01 without allocating.
+     */
+    static int parseEpochDay(char[] text, int offset, int length) {
+        if (length < 10) {
+            return Integer.MIN_VALUE;
+        }
+        int year = digits(text, offset, 4);
+        int month = digits(text, offset + 5, 2);
+        int day = digits(text, offset + 8, 2);
+        return epochDay(year, month, day);
+    }
+
+    /**
+     * Days since 1970-01-01 for a proleptic Gregorian date (the same value as {@code LocalDate.toEpochDay()}).
+     */
+    public static int epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int digits(char[] text, int offset, int count) {
+        int value = 0;
+        for (int i = 0; i < count; i++) {
+            value = value * 10 + (text[offset + i] - '0');
+        }
+        return value;
+    }
+}
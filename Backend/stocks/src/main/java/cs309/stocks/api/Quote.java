@@ -14,6 +14,10 @@ public class Quote {
     private double open;
     private double previousClose;
     private int time;
+    /**
+     * Set when this is the last known quote, served because a fresh one could not be fetched in time
+     */
+    private boolean stale;
 
     public Quote(RawQuote q) {
         this.currentPrice = q.getC();
@@ -25,4 +29,39 @@ public class Quote {
         this.previousClose = q.getPc();
         this.time = q.getT();
     }
+
+    private Quote(Quote q, boolean stale) {
+        this.currentPrice = q.currentPrice;
+        this.change = q.change;
+        this.percentChange = q.percentChange;
+        this.high = q.high;
+        this.low = q.low;
+        this.open = q.open;
+        this.previousClose = q.previousClose;
+        this.time = q.time;
+        this.stale = stale;
+    }
+
+    /**
+     * A copy of this quote flagged as stale, leaving the cached instance untouched.
+     */
+    public Quote asStale() {
+        return new Quote(this, true);
+    }
+
+    /**
+     * A copy of this quote moved to a more recent trade price.
+     *
+     * @param timeMillis trade time in epoch milliseconds
+     */
+    public Quote withTrade(double price, long timeMillis) {
+        Quote q = new Quote(this, false);
+        q.currentPrice = price;
+        q.change = price - previousClose;
+        q.percentChange = previousClose == 0 ? 0 : q.change / previousClose * 100;
+        q.high = Math.max(high, price);
+        q.low = low == 0 ? price : Math.min(low, price);
+        q.time = (int) (timeMillis / 1000);
+        return q;
+    }
 }
@@ -0,0 +1,202 @@
+package cs309.stocks.api;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Per-symbol quote cache. Quotes are reused while they are fresh (a short window while the market is
+ * open, a longer one while it is closed), and concurrent misses for the same symbol share a single
+ * upstream request instead of each making their own.
+ * <p>
+ * Callers that can live with an older price get the last known quote, flagged as stale, as soon as
+ * it expires; the refresh then happens in the background, so an upstream outage slows nobody down.
+ * <p>
+ * A caller that needs a current quote (a trade) only shares a fetch with other such callers: a fetch
+ * runs in the scheduler lane of whoever started it, and a trade must not wait in a lower one.
+ * <p>
+ * Symbols come straight from requests, so only the QUOTE_CACHE_SIZE most recently used are kept.
+ */
+public class QuoteCache {
+    private final Map<String, Entry> entries;
+    private final Map<String, CompletableFuture<Quote>> inFlight = new ConcurrentHashMap<>();
+    // Fetches started by callers that cannot take a stale quote
+    private final Map<String, CompletableFuture<Quote>> urgentInFlight = new ConcurrentHashMap<>();
+    private final long openTtlMillis;
+    private final long closedTtlMillis;
+    private final long maxStaleMillis;
+    private final Executor refresher;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+
+    /**
+     * @param refresher runs background refreshes of expired quotes; it should not be a pool that callers
+     *                  of {@link #get} block on, or refreshes can queue behind the reads waiting for them
+     */
+    public QuoteCache(Executor refresher) {
+        this(Settings.getLong("QUOTE_TTL_OPEN_MS", 15000), Settings.getLong("QUOTE_TTL_CLOSED_MS", 300000),
+                Settings.getLong("QUOTE_MAX_STALE_MS", 86400000), Settings.getInt("QUOTE_CACHE_SIZE", 10000), refresher);
+    }
+
+    public QuoteCache(long openTtlMillis, long closedTtlMillis, long maxStaleMillis, int maxEntries, Executor refresher) {
+        this.openTtlMillis = openTtlMillis;
+        this.closedTtlMillis = closedTtlMillis;
+        this.maxStaleMillis = maxStaleMillis;
+        this.refresher = refresher;
+        entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns a fresh quote for {@code symbol}, calling {@code loader} only if no fresh quote is cached
+     * and no other thread is already fetching one.
+     *
+     * @param allowStale return the last known quote (flagged stale) instead of waiting for a new one,
+     *                   and refresh it in the background; when false, only fetches started by other
+     *                   callers passing false are joined
+     */
+    public Quote get(String symbol, boolean allowStale, Function<String, Quote> loader) {
+        String key = symbol.toUpperCase(Locale.ROOT);
+        Entry entry = lookup(key);
+        long now = System.currentTimeMillis();
+        if (entry != null && now - entry.fetchedAt < ttl(now)) {
+            hits.incrementAndGet();
+            return entry.quote;
+        }
+        if (allowStale && entry != null && now - entry.fetchedAt < maxStaleMillis) {
+            staleServed.incrementAndGet();
+            revalidate(key, symbol, loader);
+            return entry.quote.asStale();
+        }
+
+        if (allowStale) {
+            CompletableFuture<Quote> urgent = urgentInFlight.get(key);
+            if (urgent != null) {
+                coalesced.incrementAndGet();
+                return await(urgent);
+            }
+        }
+        Map<String, CompletableFuture<Quote>> fetches = allowStale ? inFlight : urgentInFlight;
+        CompletableFuture<Quote> mine = new CompletableFuture<>();
+        CompletableFuture<Quote> existing = fetches.putIfAbsent(key, mine);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return await(existing);
+        }
+
+        try {
+            // Another thread may have finished a fetch between our cache check and claiming the slot
+            Quote quote = getFresh(key);
+            if (quote != null) {
+                hits.incrementAndGet();
+            } else {
+                misses.incrementAndGet();
+                quote = loader.apply(symbol);
+                store(key, new Entry(quote, System.currentTimeMillis()));
+            }
+            mine.complete(quote);
+            return quote;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            fetches.remove(key, mine);
+        }
+    }
+
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("coalesced", coalesced.get());
+        metrics.put("staleServed", staleServed.get());
+        metrics.put("revalidations", revalidations.get());
+        synchronized (entries) {
+            metrics.put("size", entries.size());
+        }
+        return metrics;
+    }
+
+    /**
+     * Starts a background fetch for {@code key} unless one is already running.
+     */
+    private void revalidate(String key, String symbol, Function<String, Quote> loader) {
+        CompletableFuture<Quote> mine = new CompletableFuture<>();
+        if (inFlight.putIfAbsent(key, mine) != null) {
+            return;
+        }
+        revalidations.incrementAndGet();
+        try {
+            refresher.execute(() -> {
+                try {
+                    Quote quote = loader.apply(symbol);
+                    store(key, new Entry(quote, System.currentTimeMillis()));
+                    mine.complete(quote);
+                } catch (RuntimeException e) {
+                    // The stale quote keeps being served; the next expired read tries again
+                    mine.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(key, mine);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+        }
+    }
+
+    private Entry lookup(String key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    private void store(String key, Entry entry) {
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    private Quote getFresh(String key) {
+        Entry entry = lookup(key);
+        long now = System.currentTimeMillis();
+        if (entry != null && now - entry.fetchedAt < ttl(now)) {
+            return entry.quote;
+        }
+        return null;
+    }
+
+    private long ttl(long now) {
+        return MarketCalendar.getInstance().isOpen(Instant.ofEpochMilli(now)) ? openTtlMillis : closedTtlMillis;
+    }
+
+    private static Quote await(CompletableFuture<Quote> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private record Entry(Quote quote, long fetchedAt) {
+    }
+}
@@ -0,0 +1,19 @@
+package cs309.stocks.api;
+
+/**
+ * Priority lanes for upstream market data calls, highest first.
+ */
+public enum RequestPriority {
+    /**
+     * Pricing and validating a trade the user is waiting on
+     */
+    TRADE,
+    /**
+     * Valuing portfolios, leaderboards and stock pages
+     */
+    VALUATION,
+    /**
+     * Search, news and recommendations
+     */
+    SEARCH
+}
@@ -0,0 +1,41 @@
+package cs309.stocks.api;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.Locale;
+
+/**
+ * Bar size of a price series. Daily bars are what upstream provides; longer bars are built from them.
+ */
+public enum Resolution {
+    DAY,
+    WEEK,
+    MONTH,
+    YEAR;
+
+    /**
+     * Parses a request parameter such as {@code "week"}, ignoring case.
+     *
+     * @throws IllegalArgumentException if it names no resolution
+     */
+    public static Resolution parse(String value) {
+        try {
+            return valueOf(value.strip().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown resolution: " + value + " (expected day, week, month or year)");
+        }
+    }
+
+    /**
+     * The first day (as an epoch day) of the bar that {@code epochDay} falls into. Weeks start on Monday.
+     */
+    public int bucket(int epochDay) {
+        return switch (this) {
+            case DAY -> epochDay;
+            case WEEK -> (int) LocalDate.ofEpochDay(epochDay).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).toEpochDay();
+            case MONTH -> (int) LocalDate.ofEpochDay(epochDay).withDayOfMonth(1).toEpochDay();
+            case YEAR -> (int) LocalDate.ofEpochDay(epochDay).withDayOfYear(1).toEpochDay();
+        };
+    }
+}
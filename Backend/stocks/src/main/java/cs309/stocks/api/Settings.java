@@ -0,0 +1,31 @@
+package cs309.stocks.api;
+
+/**
+ * Reads optional tuning values for the market data clients from environment variables,
+ * the same way the API keys are configured.
+ */
+public final class Settings {
+    private Settings() {
+    }
+
+    public static String getString(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return value == null || value.isBlank() ? defaultValue : value.strip();
+    }
+
+    public static long getLong(String name, long defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.strip());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException(name + " must be a number, got '" + value + "'", e);
+        }
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        return Math.toIntExact(getLong(name, defaultValue));
+    }
+}
@@ -1,26 +1,105 @@
 package cs309.stocks.api;
 
-import lombok.Getter;
-import lombok.Setter;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 
-@Getter
-@Setter
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The handful of fundamentals shown on a stock's info page. Values are kept as primitives, with
+ * {@code NaN} marking a metric FinnHub did not report; the getters turn that back into {@code null}.
+ */
 public class Stats {
-    private Number yearHigh;
-    private Number yearLow;
-    private Number beta;
-    private Number dividendYield;
-    private Number epsAnnual;
-    private Number marketCap;
-    private Number peRatio;
-
-    public Stats(AllStats allStats) {
-        yearHigh = (Number) allStats.getMetric().get("52WeekHigh");
-        yearLow = (Number) allStats.getMetric().get("52WeekLow");
-        beta = (Number) allStats.getMetric().get("beta");
-        dividendYield = (Number) allStats.getMetric().get("currentDividendYieldTTM");
-        epsAnnual = (Number) allStats.getMetric().get("epsAnnual");
-        marketCap = (Number) allStats.getMetric().get("marketCapitalization");
-        peRatio = (Number) allStats.getMetric().get("peTTM");
+    private final double yearHigh;
+    private final double yearLow;
+    private final double beta;
+    private final double dividendYield;
+    private final double epsAnnual;
+    private final double marketCap;
+    private final double peRatio;
+
+    public Stats(double yearHigh, double yearLow, double beta, double dividendYield, double epsAnnual,
+                 double marketCap, double peRatio) {
+        this.yearHigh = yearHigh;
+        this.yearLow = yearLow;
+        this.beta = beta;
+        this.dividendYield = dividendYield;
+        this.epsAnnual = epsAnnual;
+        this.marketCap = marketCap;
+        this.peRatio = peRatio;
+    }
+
+    /**
+     * Reads a FinnHub {@code stock/metric} response, keeping only the metrics above and skipping the
+     * rest of the (large) metric map and the per-period series without building them.
+     */
+    public static Stats parse(InputStream in) throws IOException {
+        double yearHigh = Double.NaN, yearLow = Double.NaN, beta = Double.NaN, dividendYield = Double.NaN;
+        double epsAnnual = Double.NaN, marketCap = Double.NaN, peRatio = Double.NaN;
+        try (JsonParser parser = HttpTransport.mapper().getFactory().createParser(in)) {
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.currentName();
+                    JsonToken value = parser.nextToken();
+                    if (!"metric".equals(field) || value != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        continue;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String metric = parser.currentName();
+                        JsonToken metricValue = parser.nextToken();
+                        if (!metricValue.isNumeric()) {
+                            parser.skipChildren();
+                            continue;
+                        }
+                        switch (metric) {
+                            case "52WeekHigh" -> yearHigh = parser.getDoubleValue();
+                            case "52WeekLow" -> yearLow = parser.getDoubleValue();
+                            case "beta" -> beta = parser.getDoubleValue();
+                            case "currentDividendYieldTTM" -> dividendYield = parser.getDoubleValue();
+                            case "epsAnnual" -> epsAnnual = parser.getDoubleValue();
+                            case "marketCapitalization" -> marketCap = parser.getDoubleValue();
+                            case "peTTM" -> peRatio = parser.getDoubleValue();
+                            default -> {
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return new Stats(yearHigh, yearLow, beta, dividendYield, epsAnnual, marketCap, peRatio);
+    }
+
+    public Double getYearHigh() {
+        return valueOrNull(yearHigh);
+    }
+
+    public Double getYearLow() {
+        return valueOrNull(yearLow);
+    }
+
+    public Double getBeta() {
+        return valueOrNull(beta);
+    }
+
+    public Double getDividendYield() {
+        return valueOrNull(dividendYield);
+    }
+
+    public Double getEpsAnnual() {
+        return valueOrNull(epsAnnual);
+    }
+
+    public Double getMarketCap() {
+        return valueOrNull(marketCap);
+    }
+
+    public Double getPeRatio() {
+        return valueOrNull(peRatio);
+    }
+
+    private static Double valueOrNull(double value) {
+        return Double.isNaN(value) ? null : value;
     }
 }
@@ -4,12 +4,36 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.util.Locale;
+import java.util.regex.Pattern;
+
 @Getter
 @Setter
 @NoArgsConstructor
 public class Symbol {
+    /**
+     * What a ticker may look like, once upper-cased. Anything else is rejected before it reaches an
+     * upstream URL or a file name.
+     */
+    public static final Pattern PATTERN = Pattern.compile("[A-Z0-9.^\\-]{1,16}");
+
     private String description;
     private String displaySymbol;
     private String symbol;
     private String type;
+
+    public static boolean isValid(String symbol) {
+        return symbol != null && PATTERN.matcher(symbol.toUpperCase(Locale.ROOT)).matches();
+    }
+
+    /**
+     * @return {@code symbol}
+     * @throws IllegalArgumentException if it is not a valid ticker
+     */
+    public static String check(String symbol) {
+        if (!isValid(symbol)) {
+            throw new IllegalArgumentException("Invalid symbol: " + symbol);
+        }
+        return symbol;
+    }
 }
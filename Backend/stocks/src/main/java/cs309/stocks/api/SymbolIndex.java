@@ -0,0 +1,285 @@
+package cs309.stocks.api;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * In-memory index over a symbol universe (every US symbol FinnHub lists, for the shared instance), so
+ * searches never go upstream.
+ * <p>
+ * Queries of three or more characters are answered from a trigram index over ticker and description;
+ * shorter ones from sorted ticker and description-word arrays. Matches are ranked: exact ticker, ticker
+ * prefix, description prefix, description word prefix, then plain substring matches, with shorter
+ * descriptions first inside each rank. The symbol list is reloaded in the background once a day.
+ */
+public class SymbolIndex {
+    private static final int EXACT_TICKER = 0;
+    private static final int TICKER_PREFIX = 1;
+    private static final int DESCRIPTION_PREFIX = 2;
+    private static final int WORD_PREFIX = 3;
+    private static final int TICKER_CONTAINS = 4;
+    private static final int DESCRIPTION_CONTAINS = 5;
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+    private static final long RETRY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static SymbolIndex instance;
+
+    private final Supplier<List<Symbol>> source;
+    private final ScheduledExecutorService refresher;
+    private final long refreshMillis;
+    private final CountDownLatch firstLoad = new CountDownLatch(1);
+    private volatile Index index = new Index(List.of());
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong searchNanos = new AtomicLong();
+    private volatile long loadedAt;
+
+    /**
+     * @param source loads the full symbol list; called once at startup and again on every refresh
+     */
+    public SymbolIndex(Supplier<List<Symbol>> source) {
+        this.source = source;
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "symbol-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refreshMillis = Settings.getLong("SYMBOL_INDEX_REFRESH_MS", TimeUnit.DAYS.toMillis(1));
+        refresher.execute(this::refresh);
+    }
+
+    public static synchronized SymbolIndex getInstance() {
+        if (instance == null) {
+            instance = new SymbolIndex(() -> FinnHub.getInstance().symbols());
+        }
+        return instance;
+    }
+
+    /**
+     * Finds symbols whose ticker or description contains {@code query}, best matches first.
+     *
+     * @param type  only return symbols of this type (e.g. "Common Stock"), or null for any type
+     * @param limit maximum number of results
+     */
+    public List<Symbol> search(String query, String type, int limit) {
+        awaitFirstLoad();
+        long start = System.nanoTime();
+        String q = query.strip().toUpperCase(Locale.ROOT);
+        List<Symbol> results = q.isEmpty() ? List.of() : index.search(q, type, limit);
+        searches.incrementAndGet();
+        searchNanos.addAndGet(System.nanoTime() - start);
+        return results;
+    }
+
+    public Map<String, Number> getMetrics() {
+        long count = searches.get();
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("symbols", index.symbols.length);
+        metrics.put("loadedAt", loadedAt);
+        metrics.put("searches", count);
+        metrics.put("averageSearchMicros", count == 0 ? 0 : searchNanos.get() / count / 1000.0);
+        return metrics;
+    }
+
+    /**
+     * Reloads the symbol list and schedules the next reload, sooner if this one failed.
+     */
+    private void refresh() {
+        long next = RETRY_MILLIS;
+        try {
+            index = new Index(source.get());
+            loadedAt = System.currentTimeMillis();
+            next = refreshMillis;
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            firstLoad.countDown();
+            refresher.schedule(this::refresh, next, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void awaitFirstLoad() {
+        try {
+            firstLoad.await(Settings.getLong("SYMBOL_INDEX_LOAD_WAIT_MS", 10000), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Immutable snapshot of the symbol list and its lookup structures.
+     */
+    private static class Index {
+        private final Symbol[] symbols;
+        private final String[] tickers;
+        private final String[] descriptions;
+        // Tickers in sorted order, as positions into symbols
+        private final int[] byTicker;
+        // Every description word, sorted, with the symbol it came from
+        private final String[] words;
+        private final int[] wordSymbols;
+        private final Map<Long, int[]> trigrams;
+
+        Index(List<Symbol> list) {
+            symbols = list.stream().filter(s -> s.getSymbol() != null).toArray(Symbol[]::new);
+            tickers = new String[symbols.length];
+            descriptions = new String[symbols.length];
+            for (int i = 0; i < symbols.length; i++) {
+                tickers[i] = symbols[i].getSymbol().toUpperCase(Locale.ROOT);
+                String description = symbols[i].getDescription();
+                descriptions[i] = description == null ? "" : description.toUpperCase(Locale.ROOT);
+            }
+
+            byTicker = sortedPositions(tickers);
+
+            List<String> wordList = new ArrayList<>();
+            List<Integer> wordOwners = new ArrayList<>();
+            for (int i = 0; i < symbols.length; i++) {
+                for (String word : descriptions[i].split("[^A-Z0-9]+")) {
+                    if (!word.isEmpty()) {
+                        wordList.add(word);
+                        wordOwners.add(i);
+                    }
+                }
+            }
+            String[] unsortedWords = wordList.toArray(String[]::new);
+            int[] order = sortedPositions(unsortedWords);
+            words = new String[order.length];
+            wordSymbols = new int[order.length];
+            for (int i = 0; i < order.length; i++) {
+                words[i] = unsortedWords[order[i]];
+                wordSymbols[i] = wordOwners.get(order[i]);
+            }
+
+            Map<Long, List<Integer>> postings = new HashMap<>();
+            for (int i = 0; i < symbols.length; i++) {
+                Set<Long> seen = new HashSet<>();
+                addTrigrams(tickers[i], seen);
+                addTrigrams(descriptions[i], seen);
+                for (long trigram : seen) {
+                    postings.computeIfAbsent(trigram, k -> new ArrayList<>()).add(i);
+                }
+            }
+            trigrams = new HashMap<>(postings.size() * 2);
+            postings.forEach((trigram, ids) -> trigrams.put(trigram, ids.stream().mapToInt(Integer::intValue).toArray()));
+        }
+
+        List<Symbol> search(String q, String type, int limit) {
+            Set<Integer> candidates = new HashSet<>();
+            if (q.length() >= 3) {
+                // Every match must contain every trigram of the query, so the rarest one bounds the work
+                int[] rarest = null;
+                for (int i = 0; i + 3 <= q.length(); i++) {
+                    int[] list = trigrams.get(trigram(q, i));
+                    if (list == null) {
+                        return List.of();
+                    }
+                    if (rarest == null || list.length < rarest.length) {
+                        rarest = list;
+                    }
+                }
+                for (int id : rarest) {
+                    candidates.add(id);
+                }
+            } else {
+                for (int i = lowerBound(q, byTicker, tickers); i < byTicker.length && tickers[byTicker[i]].startsWith(q); i++) {
+                    candidates.add(byTicker[i]);
+                }
+                for (int i = lowerBound(q, null, words); i < words.length && words[i].startsWith(q); i++) {
+                    candidates.add(wordSymbols[i]);
+                }
+            }
+
+            List<int[]> ranked = new ArrayList<>();
+            for (int id : candidates) {
+                if (type != null && !type.equals(symbols[id].getType())) {
+                    continue;
+                }
+                int rank = rank(id, q);
+                if (rank != NO_MATCH) {
+                    ranked.add(new int[]{rank, descriptions[id].length(), id});
+                }
+            }
+            ranked.sort(Comparator.<int[]>comparingInt(r -> r[0]).thenComparingInt(r -> r[1])
+                    .thenComparing(r -> tickers[r[2]]));
+
+            List<Symbol> results = new ArrayList<>(Math.min(limit, ranked.size()));
+            for (int i = 0; i < ranked.size() && i < limit; i++) {
+                results.add(symbols[ranked.get(i)[2]]);
+            }
+            return results;
+        }
+
+        private int rank(int id, String q) {
+            String ticker = tickers[id];
+            String description = descriptions[id];
+            if (ticker.equals(q)) {
+                return EXACT_TICKER;
+            }
+            if (ticker.startsWith(q)) {
+                return TICKER_PREFIX;
+            }
+            if (description.startsWith(q)) {
+                return DESCRIPTION_PREFIX;
+            }
+            // Any occurrence at the start of a word counts, not just the first one
+            boolean found = false;
+            for (int at = description.indexOf(q, 1); at > 0; at = description.indexOf(q, at + 1)) {
+                if (!Character.isLetterOrDigit(description.charAt(at - 1))) {
+                    return WORD_PREFIX;
+                }
+                found = true;
+            }
+            if (ticker.contains(q)) {
+                return TICKER_CONTAINS;
+            }
+            if (found) {
+                return DESCRIPTION_CONTAINS;
+            }
+            return NO_MATCH;
+        }
+
+        private static void addTrigrams(String text, Set<Long> into) {
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                into.add(trigram(text, i));
+            }
+        }
+
+        private static long trigram(String text, int at) {
+            return ((long) text.charAt(at) << 32) | ((long) text.charAt(at + 1) << 16) | text.charAt(at + 2);
+        }
+
+        private static int[] sortedPositions(String[] values) {
+            Integer[] order = new Integer[values.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(i -> values[i]));
+            return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * First position whose value is not less than {@code key}, in an array sorted either directly
+         * or through {@code order}.
+         */
+        private static int lowerBound(String key, int[] order, String[] values) {
+            int low = 0;
+            int high = order == null ? values.length : order.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                String value = order == null ? values[mid] : values[order[mid]];
+                if (value.compareTo(key) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,390 @@
+package cs309.stocks.api;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Offline market data for development and load testing. Never makes a network call.
+ * <p>
+ * Every symbol follows its own geometric Brownian motion, sampled every few minutes during regular
+ * weekday hours (holidays are ignored) from a fixed origin date. Each session is generated from a
+ * random stream seeded by the provider seed, the symbol and the date, so the same seed always gives
+ * the same prices, the live quote agrees with the history once a session closes, and restarts change
+ * nothing. Paths are built once per symbol and then advanced incrementally; the paths of the
+ * SYNTHETIC_MAX_SYMBOLS most recently used symbols are kept, and any other is simply built again.
+ */
+public class SyntheticMarketDataProvider implements MarketDataProvider {
+    private static final int ORIGIN_DAY = (int) LocalDate.of(2015, 1, 2).toEpochDay();
+    private static final int OPEN_MINUTE = 9 * 60 + 30;
+    private static final int SESSION_MINUTES = 390;
+    private static final int STEP_MINUTES = 5;
+    private static final int STEPS_PER_SESSION = SESSION_MINUTES / STEP_MINUTES;
+    private static final double STEP_YEARS = 1.0 / (252 * STEPS_PER_SESSION);
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private static final List<Symbol> UNIVERSE = List.of(
+            symbol("AAPL", "APPLE INC", "Common Stock"),
+            symbol("APLE", "APPLE HOSPITALITY REIT INC", "REIT"),
+            symbol("MSFT", "MICROSOFT CORP", "Common Stock"),
+            symbol("GOOGL", "ALPHABET INC-CL A", "Common Stock"),
+            symbol("AMZN", "AMAZON.COM INC", "Common Stock"),
+            symbol("NVDA", "NVIDIA CORP", "Common Stock"),
+            symbol("META", "META PLATFORMS INC-CLASS A", "Common Stock"),
+            symbol("TSLA", "TESLA INC", "Common Stock"),
+            symbol("NFLX", "NETFLIX INC", "Common Stock"),
+            symbol("AMD", "ADVANCED MICRO DEVICES", "Common Stock"),
+            symbol("INTC", "INTEL CORP", "Common Stock"),
+            symbol("JPM", "JPMORGAN CHASE & CO", "Common Stock"),
+            symbol("BAC", "BANK OF AMERICA CORP", "Common Stock"),
+            symbol("V", "VISA INC-CLASS A SHARES", "Common Stock"),
+            symbol("KO", "COCA-COLA CO/THE", "Common Stock"),
+            symbol("PEP", "PEPSICO INC", "Common Stock"),
+            symbol("WMT", "WALMART INC", "Common Stock"),
+            symbol("DIS", "WALT DISNEY CO/THE", "Common Stock"),
+            symbol("NKE", "NIKE INC -CL B", "Common Stock"),
+            symbol("JNJ", "JOHNSON & JOHNSON", "Common Stock"),
+            symbol("XOM", "EXXON MOBIL CORP", "Common Stock"),
+            symbol("SPY", "SPDR S&P 500 ETF TRUST", "ETP"),
+            symbol("QQQ", "INVESCO QQQ TRUST SERIES 1", "ETP"));
+
+    private static final String[] HEADLINES = {
+            "%s shares move as traders weigh the latest guidance",
+            "Analysts revisit price targets for %s",
+            "%s announces quarterly results",
+            "What the options market is pricing in for %s",
+            "%s trading volume picks up ahead of the open"};
+
+    private final long seed;
+    private final Map<String, PricePath> paths;
+    private final SymbolIndex symbolIndex;
+    private final PriceRollups rollups = new PriceRollups();
+    private final IndicatorEngine indicators = new IndicatorEngine();
+
+    private final AtomicLong quotes = new AtomicLong();
+    private final AtomicLong histories = new AtomicLong();
+
+    public SyntheticMarketDataProvider(long seed) {
+        this.seed = seed;
+        int maxSymbols = Settings.getInt("SYNTHETIC_MAX_SYMBOLS", 1000);
+        paths = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PricePath> eldest) {
+                return size() > maxSymbols;
+            }
+        };
+        symbolIndex = new SymbolIndex(() -> UNIVERSE);
+    }
+
+    @Override
+    public Quote quote(String symbol) {
+        quotes.incrementAndGet();
+        return path(symbol).quote(Instant.now());
+    }
+
+    @Override
+    public Quote quote(String symbol, RequestPriority priority) {
+        return quote(symbol);
+    }
+
+    @Override
+    public Map<String, Quote> quotes(Collection<String> symbols) {
+        Map<String, Quote> result = new HashMap<>();
+        for (String symbol : symbols) {
+            result.computeIfAbsent(symbol, this::quote);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Quote> quotes(Collection<String> symbols, RequestPriority priority) {
+        return quotes(symbols);
+    }
+
+    @Override
+    public Stats stats(String symbol) {
+        PricePath path = path(symbol);
+        PriceSeries history = path.history(Instant.now());
+        double high = Double.NaN, low = Double.NaN;
+        for (int i = Math.max(0, history.size() - 252); i < history.size(); i++) {
+            high = Double.isNaN(high) ? history.high(i) : Math.max(high, history.high(i));
+            low = Double.isNaN(low) ? history.low(i) : Math.min(low, history.low(i));
+        }
+        SplittableRandom random = new SplittableRandom(path.symbolSeed ^ 1);
+        double price = history.isEmpty() ? Double.NaN : history.close(history.size() - 1);
+        double pe = 8 + random.nextDouble() * 40;
+        double shares = Math.exp(18 + random.nextDouble() * 5);
+        return new Stats(high, low, path.volatility / 0.25, random.nextDouble() * 3, price / pe, price * shares / 1e6, pe);
+    }
+
+    @Override
+    public List<Recommendation> recommendations(String symbol) {
+        long symbolSeed = symbolSeed(Symbol.check(symbol));
+        LocalDate month = LocalDate.now(MarketCalendar.ZONE).withDayOfMonth(1);
+        List<Recommendation> recommendations = new ArrayList<>();
+        for (int i = 0; i < 4; i++, month = month.minusMonths(1)) {
+            SplittableRandom random = new SplittableRandom(symbolSeed ^ month.toEpochDay() * GOLDEN);
+            Recommendation recommendation = new Recommendation();
+            recommendation.setPeriod(month.toString());
+            recommendation.setStrongBuy(random.nextInt(15));
+            recommendation.setBuy(random.nextInt(25));
+            recommendation.setHold(random.nextInt(20));
+            recommendation.setSell(random.nextInt(5));
+            recommendation.setStrongSell(random.nextInt(3));
+            recommendations.add(recommendation);
+        }
+        return recommendations;
+    }
+
+    @Override
+    public List<Symbol> search(String query, String type, int limit) {
+        return symbolIndex.search(query, type, limit);
+    }
+
+    @Override
+    public List<News> news(String category, int sinceId) {
+        category = NewsCache.checkCategory(category);
+        // One article an hour, newest first, about a rotating member of the universe; ids count hours
+        long hour = Instant.now().getEpochSecond() / 3600;
+        List<News> news = new ArrayList<>();
+        for (int i = 0; i < 20 && hour - i > sinceId; i++) {
+            long at = hour - i;
+            Symbol symbol = UNIVERSE.get((int) Math.floorMod(at * 7, UNIVERSE.size()));
+            news.add(article(category, symbol.getSymbol(), at * 3600, (int) at));
+        }
+        return news;
+    }
+
+    @Override
+    public List<News> companyNews(String symbol, LocalDate from, LocalDate to) {
+        Symbol.check(symbol);
+        long first = from.toEpochDay();
+        List<News> news = new ArrayList<>();
+        for (long day = to.toEpochDay(); day >= first; day--) {
+            long at = day * 86400 + 14 * 3600;
+            news.add(article("company", symbol.toUpperCase(Locale.ROOT), at, (int) (mix(symbolSeed(symbol) ^ day) & Integer.MAX_VALUE)));
+        }
+        return news;
+    }
+
+    @Override
+    public PriceSeries history(String symbol) {
+        if (!Symbol.isValid(symbol)) {
+            return PriceSeries.empty();
+        }
+        histories.incrementAndGet();
+        return path(symbol).history(Instant.now());
+    }
+
+    @Override
+    public PriceSeries history(String symbol, Resolution resolution) {
+        return rollups.get(symbol, history(symbol), resolution);
+    }
+
+    @Override
+    public IndicatorSeries indicator(String symbol, IndicatorEngine.Spec spec) {
+        return indicators.get(symbol, history(symbol), spec);
+    }
+
+    @Override
+    public void watch(String symbol) {
+        // Synthetic quotes are always computed for the current time, there is nothing to subscribe to
+    }
+
+    @Override
+    public void unwatch(String symbol) {
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Number> synthetic = new LinkedHashMap<>();
+        synchronized (paths) {
+            synthetic.put("symbols", paths.size());
+        }
+        synthetic.put("quotes", quotes.get());
+        synthetic.put("histories", histories.get());
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("synthetic", synthetic);
+        metrics.put("symbolIndex", symbolIndex.getMetrics());
+        metrics.put("rollups", rollups.getMetrics());
+        metrics.put("indicators", indicators.getMetrics());
+        return metrics;
+    }
+
+    private PricePath path(String symbol) {
+        String key = Symbol.check(symbol).toUpperCase(Locale.ROOT);
+        synchronized (paths) {
+            return paths.computeIfAbsent(key, s -> new PricePath(symbolSeed(s)));
+        }
+    }
+
+    private long symbolSeed(String symbol) {
+        return mix(seed * GOLDEN + symbol.toUpperCase(Locale.ROOT).hashCode());
+    }
+
+    private static News article(String category, String symbol, long datetime, int id) {
+        News news = new News();
+        news.setCategory(category);
+        news.setDatetime(datetime);
+        news.setHeadline(String.format(HEADLINES[Math.floorMod(id, HEADLINES.length)], symbol));
+        news.setId(id);
+        news.setImage("");
+        news.setRelated(symbol);
+        news.setSource("Synthetic");
+        news.setSummary("Generated for offline testing.");
+        news.setUrl("");
+        return news;
+    }
+
+    private static Symbol symbol(String ticker, String description, String type) {
+        Symbol symbol = new Symbol();
+        symbol.setSymbol(ticker);
+        symbol.setDisplaySymbol(ticker);
+        symbol.setDescription(description);
+        symbol.setType(type);
+        return symbol;
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * One symbol's price path: every completed session since the origin, plus the session in progress.
+     */
+    private static class PricePath {
+        private final long symbolSeed;
+        private final double drift;
+        private final double volatility;
+
+        private int[] days = new int[1024];
+        private double[] open = new double[1024], high = new double[1024], low = new double[1024], close = new double[1024];
+        private int size;
+        private int builtThrough = ORIGIN_DAY - 1;
+        private double lastClose;
+        private PriceSeries snapshot;
+
+        // The session in progress, advanced one step at a time as quotes are requested
+        private int sessionDay = Integer.MIN_VALUE;
+        private int sessionSteps;
+        private SplittableRandom sessionRandom;
+        private double sessionLogPrice, sessionOpen, sessionHigh, sessionLow;
+
+        PricePath(long symbolSeed) {
+            this.symbolSeed = symbolSeed;
+            SplittableRandom random = new SplittableRandom(symbolSeed);
+            drift = 0.02 + random.nextDouble() * 0.10;
+            volatility = 0.15 + random.nextDouble() * 0.40;
+            lastClose = Math.exp(Math.log(20) + random.nextDouble() * Math.log(20));
+        }
+
+        synchronized Quote quote(Instant now) {
+            ZonedDateTime time = now.atZone(MarketCalendar.ZONE);
+            int today = (int) time.toLocalDate().toEpochDay();
+            int minute = time.getHour() * 60 + time.getMinute() - OPEN_MINUTE;
+            boolean trading = isWeekday(today) && minute >= 0 && minute < SESSION_MINUTES;
+
+            RawQuote raw = new RawQuote();
+            raw.setT((int) now.getEpochSecond());
+            if (trading) {
+                buildThrough(today - 1);
+                advanceSession(today, minute / STEP_MINUTES + 1);
+                raw.setC(Math.exp(sessionLogPrice));
+                raw.setO(sessionOpen);
+                raw.setH(sessionHigh);
+                raw.setL(sessionLow);
+                raw.setPc(lastClose);
+            } else {
+                buildThrough(isWeekday(today) && minute >= SESSION_MINUTES ? today : today - 1);
+                int last = size - 1;
+                raw.setC(close[last]);
+                raw.setO(open[last]);
+                raw.setH(high[last]);
+                raw.setL(low[last]);
+                raw.setPc(last > 0 ? close[last - 1] : open[last]);
+            }
+            raw.setD(raw.getC() - raw.getPc());
+            raw.setDp(raw.getD() / raw.getPc() * 100);
+            return new Quote(raw);
+        }
+
+        synchronized PriceSeries history(Instant now) {
+            ZonedDateTime time = now.atZone(MarketCalendar.ZONE);
+            int today = (int) time.toLocalDate().toEpochDay();
+            boolean closed = time.getHour() * 60 + time.getMinute() >= OPEN_MINUTE + SESSION_MINUTES;
+            buildThrough(closed ? today : today - 1);
+            if (snapshot == null || snapshot.size() != size) {
+                PriceSeries.Builder builder = new PriceSeries.Builder(size);
+                for (int i = 0; i < size; i++) {
+                    builder.add(days[i], open[i], high[i], low[i], close[i]);
+                }
+                snapshot = builder.build();
+            }
+            return snapshot;
+        }
+
+        /**
+         * Appends a bar for every weekday up to and including {@code day}.
+         */
+        private void buildThrough(int day) {
+            while (builtThrough < day) {
+                builtThrough++;
+                if (!isWeekday(builtThrough)) {
+                    continue;
+                }
+                advanceSession(builtThrough, STEPS_PER_SESSION);
+                append(builtThrough, sessionOpen, sessionHigh, sessionLow, Math.exp(sessionLogPrice));
+                lastClose = close[size - 1];
+            }
+        }
+
+        /**
+         * Moves the session on {@code day} forward to {@code steps} steps, starting it from the last
+         * close if it is a new day.
+         */
+        private void advanceSession(int day, int steps) {
+            if (sessionDay != day) {
+                sessionDay = day;
+                sessionSteps = 0;
+                sessionRandom = new SplittableRandom(symbolSeed ^ day * GOLDEN);
+                sessionLogPrice = Math.log(lastClose);
+                sessionOpen = sessionHigh = sessionLow = lastClose;
+            }
+            double driftStep = (drift - volatility * volatility / 2) * STEP_YEARS;
+            double volatilityStep = volatility * Math.sqrt(STEP_YEARS);
+            for (; sessionSteps < steps; sessionSteps++) {
+                sessionLogPrice += driftStep + volatilityStep * sessionRandom.nextGaussian();
+                double price = Math.exp(sessionLogPrice);
+                sessionHigh = Math.max(sessionHigh, price);
+                sessionLow = Math.min(sessionLow, price);
+            }
+        }
+
+        private void append(int day, double o, double h, double l, double c) {
+            if (size == days.length) {
+                int capacity = size * 2;
+                days = Arrays.copyOf(days, capacity);
+                open = Arrays.copyOf(open, capacity);
+                high = Arrays.copyOf(high, capacity);
+                low = Arrays.copyOf(low, capacity);
+                close = Arrays.copyOf(close, capacity);
+            }
+            days[size] = day;
+            open[size] = o;
+            high[size] = h;
+            low[size] = l;
+            close[size] = c;
+            size++;
+        }
+
+        private static boolean isWeekday(int epochDay) {
+            DayOfWeek day = LocalDate.ofEpochDay(epochDay).getDayOfWeek();
+            return day != DayOfWeek.SATURDAY && day != DayOfWeek.SUNDAY;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package cs309.stocks.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.WebSocket;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live last-trade prices pushed from FinnHub's WebSocket trade feed.
+ * <p>
+ * Only symbols someone holds or is watching are subscribed: callers {@link #acquire} a symbol when a
+ * position opens or a viewer starts watching it and {@link #release} it afterwards, and the feed is
+ * subscribed while the count is above zero. The feed caps how many symbols one connection may follow;
+ * symbols beyond the cap wait and are subscribed as others are released. A dropped connection is
+ * reopened with backoff and its subscriptions replayed.
+ * <p>
+ * The address comes from FINNHUB_STREAM_URL, so tests can point it at a local stand-in server.
+ */
+public class TradeStream implements WebSocket.Listener {
+    private final URI uri;
+    private final int maxSymbols;
+    private final ScheduledExecutorService reconnector;
+
+    private final Map<String, Integer> references = new HashMap<>();
+    private final Set<String> subscribed = new LinkedHashSet<>();
+    private final Set<String> waiting = new LinkedHashSet<>();
+    private final Map<String, LastTrade> lastTrades = new ConcurrentHashMap<>();
+
+    private WebSocket socket;
+    private CompletableFuture<WebSocket> sends = CompletableFuture.completedFuture(null);
+    private long backoffMillis = 1000;
+    private final StringBuilder partial = new StringBuilder();
+
+    private final AtomicLong trades = new AtomicLong();
+    private final AtomicLong reconnects = new AtomicLong();
+
+    /**
+     * @param uri        feed address, including the API token
+     * @param maxSymbols how many symbols the feed lets one connection subscribe to
+     */
+    public TradeStream(URI uri, int maxSymbols) {
+        this.uri = uri;
+        this.maxSymbols = maxSymbols;
+        reconnector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "trade-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reconnector.execute(this::connect);
+    }
+
+    /**
+     * Adds a reference to {@code symbol}, subscribing to it if it is the first.
+     */
+    public synchronized void acquire(String symbol) {
+        String key = symbol.toUpperCase(Locale.ROOT);
+        if (references.merge(key, 1, Integer::sum) > 1) {
+            return;
+        }
+        if (subscribed.size() < maxSymbols) {
+            subscribed.add(key);
+            send("subscribe", key);
+        } else {
+            waiting.add(key);
+        }
+    }
+
+    /**
+     * Drops a reference to {@code symbol}, unsubscribing once nobody holds or watches it.
+     */
+    public synchronized void release(String symbol) {
+        String key = symbol.toUpperCase(Locale.ROOT);
+        Integer count = references.computeIfPresent(key, (k, n) -> n > 1 ? n - 1 : null);
+        if (count != null) {
+            return;
+        }
+        waiting.remove(key);
+        if (subscribed.remove(key)) {
+            send("unsubscribe", key);
+            lastTrades.remove(key);
+            Iterator<String> next = waiting.iterator();
+            if (next.hasNext()) {
+                String promoted = next.next();
+                next.remove();
+                subscribed.add(promoted);
+                send("subscribe", promoted);
+            }
+        }
+    }
+
+    /**
+     * The most recent trade seen for {@code symbol}, or null if it is not subscribed or has not traded.
+     */
+    public LastTrade lastTrade(String symbol) {
+        return lastTrades.get(symbol.toUpperCase(Locale.ROOT));
+    }
+
+    public Map<String, Number> getMetrics() {
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        synchronized (this) {
+            metrics.put("connected", socket == null ? 0 : 1);
+            metrics.put("subscribed", subscribed.size());
+            metrics.put("waiting", waiting.size());
+        }
+        metrics.put("trades", trades.get());
+        metrics.put("reconnects", reconnects.get());
+        return metrics;
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        synchronized (this) {
+            socket = webSocket;
+            sends = CompletableFuture.completedFuture(webSocket);
+            backoffMillis = 1000;
+            for (String symbol : subscribed) {
+                send("subscribe", symbol);
+            }
+        }
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        partial.append(data);
+        if (last) {
+            try {
+                readMessage(partial.toString());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            partial.setLength(0);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        disconnected();
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        error.printStackTrace();
+        disconnected();
+    }
+
+    private void connect() {
+        HttpTransport.getInstance().openWebSocket(uri, this).whenComplete((webSocket, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+                disconnected();
+            }
+        });
+    }
+
+    private synchronized void disconnected() {
+        socket = null;
+        partial.setLength(0);
+        // Prices are only trusted while the feed is connected; until then quotes come from REST
+        lastTrades.clear();
+        reconnects.incrementAndGet();
+        reconnector.schedule(this::connect, backoffMillis, TimeUnit.MILLISECONDS);
+        backoffMillis = Math.min(backoffMillis * 2, 60000);
+    }
+
+    /**
+     * Queues a subscription change. The WebSocket allows one outstanding send at a time, so sends are
+     * chained; while disconnected they are skipped and replayed from {@link #subscribed} on reconnect.
+     */
+    private void send(String type, String symbol) {
+        if (socket == null) {
+            return;
+        }
+        String message = "{\"type\":\"" + type + "\",\"symbol\":\"" + symbol + "\"}";
+        WebSocket target = socket;
+        sends = sends.handle((ws, error) -> null)
+                .thenCompose(ignored -> target.sendText(message, true));
+    }
+
+    /**
+     * Reads a {@code {"type":"trade","data":[{"s":..,"p":..,"t":..,"v":..}, ...]}} message, keeping the
+     * newest price per symbol. Pings and other message types are ignored.
+     */
+    private void readMessage(String message) throws IOException {
+        try (JsonParser parser = HttpTransport.mapper().getFactory().createParser(message)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readTrade(parser);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private void readTrade(JsonParser parser) throws IOException {
+        String symbol = null;
+        double price = Double.NaN;
+        long time = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "s" -> symbol = parser.getText();
+                case "p" -> price = parser.getValueAsDouble(Double.NaN);
+                case "t" -> time = parser.getValueAsLong();
+                default -> {
+                    if (value.isStructStart()) {
+                        parser.skipChildren();
+                    }
+                }
+            }
+        }
+        if (symbol == null || Double.isNaN(price)) {
+            return;
+        }
+        trades.incrementAndGet();
+        LastTrade trade = new LastTrade(price, time);
+        lastTrades.merge(symbol, trade, (old, now) -> now.timeMillis >= old.timeMillis ? now : old);
+    }
+
+    /**
+     * @param timeMillis trade time in epoch milliseconds
+     */
+    public record LastTrade(double price, long timeMillis) {
+    }
+}
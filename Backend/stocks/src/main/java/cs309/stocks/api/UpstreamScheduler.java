@@ -0,0 +1,162 @@
+package cs309.stocks.api;
+
+import cs309.stocks.Exceptions.UpstreamRejectedException;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Rate limits calls to one upstream API with a token bucket sized to the plan's quota.
+ * <p>
+ * When the bucket is empty, callers queue in their {@link RequestPriority} lane and tokens are handed
+ * out to the highest priority lane first, oldest caller first. A caller that is still queued when its
+ * lane's deadline passes is shed with an {@link UpstreamRejectedException} instead of waiting forever.
+ */
+public class UpstreamScheduler {
+    private static final RequestPriority[] LANES = RequestPriority.values();
+
+    private final String name;
+    private final double capacity;
+    private final double tokensPerNano;
+    private final long[] deadlineNanos = new long[LANES.length];
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final EnumMap<RequestPriority, ArrayDeque<Object>> lanes = new EnumMap<>(RequestPriority.class);
+    private double tokens;
+    private long lastRefill;
+
+    private final AtomicLong[] granted = new AtomicLong[LANES.length];
+    private final AtomicLong[] rejected = new AtomicLong[LANES.length];
+    private final AtomicLong[] waitNanos = new AtomicLong[LANES.length];
+
+    /**
+     * @param name           prefix of the environment variables that configure this scheduler
+     * @param callsPerMinute default sustained rate allowed by the upstream plan
+     * @param burst          default number of calls that may be made back to back
+     */
+    public UpstreamScheduler(String name, int callsPerMinute, int burst) {
+        this(name, Settings.getInt(name + "_CALLS_PER_MINUTE", callsPerMinute), Settings.getInt(name + "_BURST", burst),
+                Settings.getLong(name + "_DEADLINE_TRADE_MS", 10000), Settings.getLong(name + "_DEADLINE_VALUATION_MS", 5000),
+                Settings.getLong(name + "_DEADLINE_SEARCH_MS", 2000));
+    }
+
+    public UpstreamScheduler(String name, int callsPerMinute, int burst, long tradeDeadlineMillis, long valuationDeadlineMillis, long searchDeadlineMillis) {
+        this.name = name;
+        capacity = burst;
+        tokensPerNano = callsPerMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        tokens = capacity;
+        lastRefill = System.nanoTime();
+
+        deadlineNanos[RequestPriority.TRADE.ordinal()] = TimeUnit.MILLISECONDS.toNanos(tradeDeadlineMillis);
+        deadlineNanos[RequestPriority.VALUATION.ordinal()] = TimeUnit.MILLISECONDS.toNanos(valuationDeadlineMillis);
+        deadlineNanos[RequestPriority.SEARCH.ordinal()] = TimeUnit.MILLISECONDS.toNanos(searchDeadlineMillis);
+
+        for (RequestPriority lane : LANES) {
+            lanes.put(lane, new ArrayDeque<>());
+            granted[lane.ordinal()] = new AtomicLong();
+            rejected[lane.ordinal()] = new AtomicLong();
+            waitNanos[lane.ordinal()] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Waits for a token in the given lane, then runs {@code call}.
+     *
+     * @throws UpstreamRejectedException if no token was granted before the lane's deadline
+     */
+    public <T> T execute(RequestPriority priority, Supplier<T> call) {
+        acquire(priority);
+        return call.get();
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        lock.lock();
+        try {
+            refill(System.nanoTime());
+            metrics.put("availableTokens", Math.floor(tokens));
+            for (RequestPriority lane : LANES) {
+                int i = lane.ordinal();
+                long count = granted[i].get();
+                Map<String, Number> laneMetrics = new LinkedHashMap<>();
+                laneMetrics.put("queueDepth", lanes.get(lane).size());
+                laneMetrics.put("granted", count);
+                laneMetrics.put("rejected", rejected[i].get());
+                laneMetrics.put("averageWaitMs", count == 0 ? 0 : waitNanos[i].get() / count / 1_000_000.0);
+                metrics.put(lane.name().toLowerCase(), laneMetrics);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return metrics;
+    }
+
+    private void acquire(RequestPriority priority) {
+        int i = priority.ordinal();
+        long start = System.nanoTime();
+        long deadline = start + deadlineNanos[i];
+        Object ticket = new Object();
+        ArrayDeque<Object> lane = lanes.get(priority);
+
+        lock.lock();
+        try {
+            lane.addLast(ticket);
+            while (true) {
+                long now = System.nanoTime();
+                refill(now);
+                boolean next = isNext(ticket);
+                if (next && tokens >= 1) {
+                    tokens -= 1;
+                    lane.removeFirst();
+                    granted[i].incrementAndGet();
+                    waitNanos[i].addAndGet(now - start);
+                    // Let the next caller in line check the bucket
+                    changed.signalAll();
+                    return;
+                }
+                if (now >= deadline) {
+                    lane.remove(ticket);
+                    rejected[i].incrementAndGet();
+                    changed.signalAll();
+                    throw new UpstreamRejectedException(name + " request quota exhausted, try again shortly");
+                }
+
+                long wait = deadline - now;
+                if (next) {
+                    wait = Math.min(wait, (long) Math.ceil((1 - tokens) / tokensPerNano));
+                }
+                changed.awaitNanos(wait);
+            }
+        } catch (InterruptedException e) {
+            lane.remove(ticket);
+            changed.signalAll();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isNext(Object ticket) {
+        for (RequestPriority lane : LANES) {
+            ArrayDeque<Object> queue = lanes.get(lane);
+            if (!queue.isEmpty()) {
+                return queue.peekFirst() == ticket;
+            }
+        }
+        return false;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
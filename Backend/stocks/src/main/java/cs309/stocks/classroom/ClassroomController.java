@@ -4,7 +4,8 @@ import cs309.stocks.Portfolios.Portfolio;
 import cs309.stocks.Portfolios.PortfolioRepository;
 import cs309.stocks.Users.User;
 import cs309.stocks.Users.UserRepository;
-import cs309.stocks.api.FinnHub;
+import cs309.stocks.api.MarketDataProvider;
+import cs309.stocks.api.Quote;
 import cs309.stocks.userAnnouncements.UserAnnouncementsRepository;
 import cs309.stocks.websockets.ClassroomMessageRepository;
 import cs309.stocks.websockets.Message;
@@ -41,6 +42,9 @@ public class ClassroomController {
     @Autowired
     private ClassroomMessageRepository classroomMessageRepository;
 
+    @Autowired
+    private MarketDataProvider marketData;
+
 
     @ApiResponses({
             @ApiResponse(responseCode = "200", content = @Content(mediaType = "text/plain", schema = @Schema(type = "string", example = "Classroom created successfully"))),
@@ -408,16 +412,23 @@ public class ClassroomController {
             return new ResponseEntity<>("You cannot view this classroom", HttpStatus.FORBIDDEN);
         }
 
+        // Load every student's portfolio first so all of their holdings can be quoted in one batch
+        Map<Integer, Portfolio> portfolios = new HashMap<>();
+        for (User student : classroom.getStudents()) {
+            portfolios.put(student.getId(), portfolioRepository.findByUserAndClassroom(student, classroom));
+        }
+        Map<String, Quote> quotes = marketData.quotes(Portfolio.tickersOf(portfolios.values()));
+
         // Prepare the list of students with their portfolio status (currently null)
         List<Map<String, Object>> studentInfoList = classroom.getStudents().stream().map(student -> {
             Map<String, Object> studentInfo = new HashMap<>();
             studentInfo.put("studentId", student.getId()); // Add student ID
             studentInfo.put("studentUsername", student.getUsername());
 
-            Portfolio p = portfolioRepository.findByUserAndClassroom(student, classroom);
+            Portfolio p = portfolios.get(student.getId());
             double value = 0;
             if (p != null) {
-                p.calculateValue(FinnHub.getInstance());
+                p.calculateValue(quotes);
                 value = p.getValue();
                 value -= classroom.getStartingAmount();
                 DecimalFormat df = new DecimalFormat("#.##");
@@ -4,7 +4,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import cs309.stocks.Portfolios.Portfolio;
 import cs309.stocks.Users.User;
 import cs309.stocks.Users.UserRepository;
-import cs309.stocks.api.FinnHub;
+import cs309.stocks.api.MarketDataProvider;
+import cs309.stocks.api.Quote;
 import jakarta.websocket.*;
 import jakarta.websocket.server.ServerEndpoint;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -15,6 +16,8 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Controller
 @ServerEndpoint(value = "/ws/portfolio")
@@ -22,8 +25,10 @@ public class PortfolioSocket {
 
     private static final ObjectMapper mapper = new ObjectMapper();
     private static final Map<Session, User> sessionUserMap = new HashMap<>();
+    private static final Map<Session, Set<String>> sessionTickers = new ConcurrentHashMap<>();
     private static UserRepository userRepository;
     private static BCryptPasswordEncoder encoder;
+    private static MarketDataProvider marketData;
 
     @Autowired
     public void setUserRepository(UserRepository repo) {
@@ -35,6 +40,11 @@ public class PortfolioSocket {
         encoder = e;
     }
 
+    @Autowired
+    public void setMarketData(MarketDataProvider provider) {
+        marketData = provider;
+    }
+
     @OnOpen
     public void onOpen(Session session) throws IOException {
         WebSocketAuthenticator auth = new WebSocketAuthenticator(userRepository, encoder);
@@ -47,23 +57,29 @@ public class PortfolioSocket {
 
         sessionUserMap.put(session, user);
 
-        while (true) {
-            try {
-                Thread.sleep(30000);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-
-            //Refresh User
-            user = userRepository.findByUsername(user.getUsername());
-
-            FinnHub fh = FinnHub.getInstance();
-            List<Portfolio> portfolios = user.getPortfolios();
-            for (Portfolio p : portfolios) {
-                p.calculateValue(fh);
+        try {
+            while (true) {
+                try {
+                    Thread.sleep(30000);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+
+                //Refresh User
+                user = userRepository.findByUsername(user.getUsername());
+
+                List<Portfolio> portfolios = user.getPortfolios();
+                Set<String> tickers = Portfolio.tickersOf(portfolios);
+                watch(session, tickers);
+                Map<String, Quote> quotes = marketData.quotes(tickers);
+                for (Portfolio p : portfolios) {
+                    p.calculateValue(quotes);
+                }
+
+                session.getBasicRemote().sendText(mapper.writeValueAsString(portfolios));
             }
-
-            session.getBasicRemote().sendText(mapper.writeValueAsString(portfolios));
+        } finally {
+            unwatch(session);
         }
     }
 
@@ -73,6 +89,33 @@ public class PortfolioSocket {
 
     @OnClose
     public void onClose(Session session) {
+        unwatch(session);
+    }
+
+    /**
+     * Points the session's live price subscriptions at {@code tickers}, releasing ones it no longer shows.
+     */
+    private static void watch(Session session, Set<String> tickers) {
+        Set<String> previous = sessionTickers.put(session, tickers);
+        for (String ticker : tickers) {
+            if (previous == null || !previous.contains(ticker)) {
+                marketData.watch(ticker);
+            }
+        }
+        if (previous != null) {
+            for (String ticker : previous) {
+                if (!tickers.contains(ticker)) {
+                    marketData.unwatch(ticker);
+                }
+            }
+        }
+    }
+
+    private static void unwatch(Session session) {
+        Set<String> tickers = sessionTickers.remove(session);
+        if (tickers != null) {
+            tickers.forEach(marketData::unwatch);
+        }
     }
 
     @OnError
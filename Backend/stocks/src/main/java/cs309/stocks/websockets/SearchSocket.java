@@ -2,9 +2,8 @@ package cs309.stocks.websockets;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import cs309.stocks.Users.UserRepository;
-import cs309.stocks.api.FinnHub;
+import cs309.stocks.api.MarketDataProvider;
 import cs309.stocks.api.Symbol;
-import cs309.stocks.api.SymbolSearch;
 import jakarta.websocket.*;
 import jakarta.websocket.server.ServerEndpoint;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,7 +11,6 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Controller;
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -20,10 +18,10 @@ import java.util.Map;
 @ServerEndpoint(value = "/ws/search")
 public class SearchSocket {
 
-    private static final FinnHub finnHub = FinnHub.getInstance();
     private static final ObjectMapper mapper = new ObjectMapper();
     private static UserRepository userRepository;
     private static BCryptPasswordEncoder encoder;
+    private static MarketDataProvider marketData;
 
     @Autowired
     public void setUserRepository(UserRepository repo) {
@@ -35,6 +33,11 @@ public class SearchSocket {
         encoder = e;
     }
 
+    @Autowired
+    public void setMarketData(MarketDataProvider provider) {
+        marketData = provider;
+    }
+
     @OnOpen
     public void onOpen(Session session) throws IOException {
         WebSocketAuthenticator auth = new WebSocketAuthenticator(userRepository, encoder);
@@ -47,17 +50,9 @@ public class SearchSocket {
 
     @OnMessage
     public void onMessage(Session session, String query) throws IOException {
-        SymbolSearch search = finnHub.search(query);
-
-        List<Symbol> results = new ArrayList<>();
-
-        for (Symbol s : search.getResult()) {
-            if ((s.getDescription().toLowerCase().contains(query.toLowerCase()) || s.getSymbol().toLowerCase().contains(query.toLowerCase())) && s.getType().equals("Common Stock")) {
-                results.add(s);
-            }
-        }
+        List<Symbol> results = marketData.search(query, "Common Stock", 5);
 
-        session.getBasicRemote().sendText(mapper.writeValueAsString(results.subList(0, Math.min(results.size(), 5))));
+        session.getBasicRemote().sendText(mapper.writeValueAsString(results));
     }
 
     @OnClose
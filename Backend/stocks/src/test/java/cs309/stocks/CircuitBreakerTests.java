@@ -0,0 +1,152 @@
+package cs309.stocks;
+
+import cs309.stocks.Exceptions.UpstreamRejectedException;
+import cs309.stocks.api.CircuitBreaker;
+import cs309.stocks.api.HttpTransport;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * State changes of the circuit breaker, driven by calls that succeed or fail the way the upstream
+ * clients' calls do.
+ */
+public class CircuitBreakerTests {
+    private static final int THRESHOLD = 3;
+    private static final long OPEN_MILLIS = 100;
+
+    private final CircuitBreaker breaker = new CircuitBreaker("TEST", THRESHOLD, OPEN_MILLIS);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    public void testOpensAfterConsecutiveFailures() {
+        for (int i = 0; i < THRESHOLD - 1; i++) {
+            fail(503);
+        }
+        assert breaker.getState() == CircuitBreaker.State.CLOSED;
+        fail(503);
+        assert breaker.getState() == CircuitBreaker.State.OPEN;
+
+        // Rejected straight away, without reaching the upstream
+        assert rejected(() -> ok());
+        assert calls.get() == THRESHOLD;
+    }
+
+    @Test
+    public void testProbeClosesBreaker() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 20);
+
+        String result = breaker.execute(() -> {
+            assert breaker.getState() == CircuitBreaker.State.HALF_OPEN;
+            // Only one probe at a time
+            assert rejected(() -> ok());
+            return "probe";
+        });
+        assert result.equals("probe");
+        assert breaker.getState() == CircuitBreaker.State.CLOSED;
+        assert breaker.execute(this::ok).equals("ok");
+    }
+
+    @Test
+    public void testFailedProbeReopens() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 20);
+
+        fail(500);
+        assert breaker.getState() == CircuitBreaker.State.OPEN;
+        assert rejected(() -> ok());
+
+        Thread.sleep(OPEN_MILLIS + 20);
+        breaker.execute(this::ok);
+        assert breaker.getState() == CircuitBreaker.State.CLOSED;
+    }
+
+    @Test
+    public void testShedProbeIsReleased() throws Exception {
+        open();
+        Thread.sleep(OPEN_MILLIS + 20);
+
+        // The scheduler sheds the probe before it reaches the upstream
+        assert rejected(() -> {
+            throw new UpstreamRejectedException("quota exhausted");
+        });
+        assert breaker.getState() == CircuitBreaker.State.HALF_OPEN;
+
+        // So the next call may probe instead of the breaker staying half-open for good
+        assert breaker.execute(this::ok).equals("ok");
+        assert breaker.getState() == CircuitBreaker.State.CLOSED;
+    }
+
+    @Test
+    public void testTimeoutsAndRateLimitsCount() {
+        fail(0);
+        fail(429);
+        fail(502);
+        assert breaker.getState() == CircuitBreaker.State.OPEN;
+    }
+
+    @Test
+    public void testRefusedRequestsDoNotCount() {
+        for (int i = 0; i < THRESHOLD; i++) {
+            fail(403);
+            fail(404);
+        }
+        assert breaker.getState() == CircuitBreaker.State.CLOSED;
+
+        // An answer of any kind ends a run of failures
+        fail(503);
+        fail(503);
+        fail(403);
+        fail(503);
+        fail(503);
+        assert breaker.getState() == CircuitBreaker.State.CLOSED;
+    }
+
+    @Test
+    public void testOtherErrorsDoNotCount() {
+        for (int i = 0; i < THRESHOLD; i++) {
+            try {
+                breaker.execute(() -> {
+                    throw new IllegalArgumentException("bad symbol");
+                });
+                assert false;
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        assert breaker.getState() == CircuitBreaker.State.CLOSED;
+    }
+
+    private String ok() {
+        calls.incrementAndGet();
+        return "ok";
+    }
+
+    private void fail(int status) {
+        try {
+            breaker.execute(() -> {
+                calls.incrementAndGet();
+                throw new HttpTransport.RequestFailedException("HTTP " + status, status, null);
+            });
+            assert false;
+        } catch (HttpTransport.RequestFailedException expected) {
+        }
+    }
+
+    private void open() {
+        for (int i = 0; i < THRESHOLD; i++) {
+            fail(503);
+        }
+        assert breaker.getState() == CircuitBreaker.State.OPEN;
+    }
+
+    private boolean rejected(Supplier<String> call) {
+        try {
+            breaker.execute(call);
+            return false;
+        } catch (UpstreamRejectedException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package cs309.stocks;
+
+import cs309.stocks.api.IndicatorEngine;
+import cs309.stocks.api.IndicatorSeries;
+import cs309.stocks.api.PriceSeries;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Indicator values over hand-built daily histories, checked against values worked out by hand, and
+ * the incremental update against a full rebuild.
+ */
+public class IndicatorEngineTests {
+    private static final double EPSILON = 1e-9;
+    private static final int FIRST_DAY = (int) LocalDate.of(2024, 1, 2).toEpochDay();
+
+    private final IndicatorEngine engine = new IndicatorEngine();
+
+    @Test
+    public void testSma() {
+        IndicatorSeries sma = engine.get("TEST", series(2, 4, 6, 8, 4, 2), spec("sma", 3));
+        assertRows(sma, 0, 4, 6, 6, 14.0 / 3);
+        // Dated by the bar that completes each window
+        assert sma.date(0).equals(LocalDate.ofEpochDay(FIRST_DAY + 2));
+    }
+
+    @Test
+    public void testEma() {
+        // Seeded with the average of the first three closes, then smoothed by 2 / (3 + 1)
+        IndicatorSeries ema = engine.get("TEST", series(2, 4, 6, 8, 4, 2), spec("ema", 3));
+        assertRows(ema, 0, 4, 6, 5, 3.5);
+    }
+
+    @Test
+    public void testRsi() {
+        // The closes of the usual worked example of Wilder's RSI over 14 days
+        IndicatorSeries rsi = engine.get("TEST", series(44.34, 44.09, 44.15, 43.61, 44.33, 44.83, 45.10, 45.42, 45.84,
+                46.08, 45.89, 46.03, 45.61, 46.28, 46.28, 46.00, 46.03, 46.41, 46.22, 45.64), spec("rsi", 14));
+        double[] expected = {70.46, 66.25, 66.48, 69.35, 66.29, 57.92};
+        assert rsi.size() == expected.length;
+        for (int i = 0; i < expected.length; i++) {
+            assert Math.abs(rsi.value(0, i) - expected[i]) < 0.005 : i + ": " + rsi.value(0, i);
+        }
+        assert rsi.date(0).equals(LocalDate.ofEpochDay(FIRST_DAY + 14));
+    }
+
+    @Test
+    public void testRsiWithoutLosses() {
+        IndicatorSeries rsi = engine.get("TEST", series(1, 2, 3, 4), spec("rsi", 2));
+        assertRows(rsi, 0, 100, 100);
+    }
+
+    @Test
+    public void testMacd() {
+        // Fast EMA(2): 3, 5, 7, 5, 3 from the second close; slow EMA(3): 4, 6, 5, 3.5 from the third
+        IndicatorEngine.Spec spec = IndicatorEngine.Spec.parse("macd", null, 2, 3, 2, null);
+        IndicatorSeries macd = engine.get("TEST", series(2, 4, 6, 8, 4, 2), spec);
+        assertRows(macd, 0, 1, 0, -0.5);
+        assertRows(macd, 1, 1, 1.0 / 3, -2.0 / 9);
+        assertRows(macd, 2, 0, -1.0 / 3, -5.0 / 18);
+    }
+
+    @Test
+    public void testBollinger() {
+        IndicatorEngine.Spec spec = IndicatorEngine.Spec.parse("bollinger", 3, null, null, null, 2.0);
+        IndicatorSeries bands = engine.get("TEST", series(2, 4, 6, 8, 4, 2), spec);
+        // Population standard deviation of each window: sqrt(8/3), sqrt(8/3), sqrt(8/3), sqrt(56/9)
+        double wide = 2 * Math.sqrt(8.0 / 3);
+        double last = 2 * Math.sqrt(56.0 / 9);
+        assertRows(bands, 0, 4, 6, 6, 14.0 / 3);
+        assertRows(bands, 1, 4 + wide, 6 + wide, 6 + wide, 14.0 / 3 + last);
+        assertRows(bands, 2, 4 - wide, 6 - wide, 6 - wide, 14.0 / 3 - last);
+    }
+
+    @Test
+    public void testAppendedBarsMatchRebuild() {
+        double[] closes = new double[300];
+        for (int i = 0; i < closes.length; i++) {
+            closes[i] = 100 + 10 * Math.sin(i / 7.0) + i % 5;
+        }
+        for (IndicatorEngine.Spec spec : new IndicatorEngine.Spec[]{spec("sma", 20), spec("ema", 20), spec("rsi", 14),
+                IndicatorEngine.Spec.parse("macd", null, null, null, null, null),
+                IndicatorEngine.Spec.parse("bollinger", null, null, null, null, null)}) {
+            IndicatorSeries before = engine.get("TEST", series(Arrays.copyOf(closes, 250)), spec);
+            int sizeBefore = before.size();
+            // The next day's history has one more bar, then a few more
+            IndicatorSeries incremental = engine.get("TEST", series(Arrays.copyOf(closes, 251)), spec);
+            assert incremental.size() == sizeBefore + 1;
+            incremental = engine.get("TEST", series(closes), spec);
+            IndicatorSeries rebuilt = new IndicatorEngine().get("TEST", series(closes), spec);
+
+            assert incremental.size() == rebuilt.size();
+            for (int i = 0; i < rebuilt.size(); i++) {
+                assert incremental.date(i).equals(rebuilt.date(i));
+                for (int c = 0; c < rebuilt.columns().length; c++) {
+                    assert Math.abs(incremental.value(c, i) - rebuilt.value(c, i)) < EPSILON : spec + " row " + i;
+                }
+            }
+            // Views handed out earlier are unchanged
+            assert before.size() == sizeBefore;
+        }
+        assert engine.getMetrics().get("rebuilds").longValue() == 5;
+    }
+
+    private static IndicatorEngine.Spec spec(String indicator, int period) {
+        return IndicatorEngine.Spec.parse(indicator, period, null, null, null, null);
+    }
+
+    private static PriceSeries series(double... closes) {
+        PriceSeries.Builder builder = new PriceSeries.Builder(closes.length);
+        for (int i = 0; i < closes.length; i++) {
+            builder.add(FIRST_DAY + i, closes[i], closes[i], closes[i], closes[i]);
+        }
+        return builder.build();
+    }
+
+    private static void assertRows(IndicatorSeries series, int column, double... expected) {
+        assert series.size() == expected.length : series.size() + " rows";
+        for (int i = 0; i < expected.length; i++) {
+            assert Math.abs(series.value(column, i) - expected[i]) < EPSILON : "row " + i + ": " + series.value(column, i);
+        }
+    }
+}
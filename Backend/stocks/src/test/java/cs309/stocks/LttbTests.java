@@ -0,0 +1,78 @@
+package cs309.stocks;
+
+import cs309.stocks.api.Lttb;
+import cs309.stocks.api.PriceSeries;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+/**
+ * Downsampling of a synthetic daily history for charts.
+ */
+public class LttbTests {
+    private static final int FIRST_DAY = (int) LocalDate.of(2020, 1, 1).toEpochDay();
+    private static final int BARS = 1000;
+    private static final int SPIKE = 437;
+
+    @Test
+    public void testKeepsFirstAndLastBars() {
+        PriceSeries series = series();
+        PriceSeries sampled = Lttb.downsample(series, 50);
+        assert sampled.size() == 50;
+        assertKept(sampled, 0, series, 0);
+        assertKept(sampled, sampled.size() - 1, series, BARS - 1);
+    }
+
+    @Test
+    public void testKeepsBarsUnchangedAndInOrder() {
+        PriceSeries series = series();
+        PriceSeries sampled = Lttb.downsample(series, 50);
+        for (int i = 0; i < sampled.size(); i++) {
+            if (i > 0) {
+                assert sampled.epochDay(i) > sampled.epochDay(i - 1);
+            }
+            assertKept(sampled, i, series, sampled.epochDay(i) - FIRST_DAY);
+        }
+    }
+
+    @Test
+    public void testKeepsPeak() {
+        PriceSeries sampled = Lttb.downsample(series(), 20);
+        boolean found = false;
+        for (int i = 0; i < sampled.size(); i++) {
+            found |= sampled.epochDay(i) == FIRST_DAY + SPIKE;
+        }
+        assert found;
+    }
+
+    @Test
+    public void testShortSeriesIsUnchanged() {
+        PriceSeries series = series();
+        assert Lttb.downsample(series, BARS) == series;
+        assert Lttb.downsample(PriceSeries.empty(), 3).isEmpty();
+    }
+
+    @Test
+    public void testTooFewPoints() {
+        try {
+            Lttb.downsample(series(), 2);
+            assert false;
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private static PriceSeries series() {
+        PriceSeries.Builder builder = new PriceSeries.Builder(BARS);
+        for (int i = 0; i < BARS; i++) {
+            double close = i == SPIKE ? 500 : 100 + 10 * Math.sin(i / 20.0);
+            builder.add(FIRST_DAY + i, close - 1, close + 2, close - 3, close);
+        }
+        return builder.build();
+    }
+
+    private static void assertKept(PriceSeries sampled, int i, PriceSeries series, int j) {
+        assert sampled.epochDay(i) == series.epochDay(j);
+        assert sampled.open(i) == series.open(j) && sampled.high(i) == series.high(j)
+                && sampled.low(i) == series.low(j) && sampled.close(i) == series.close(j);
+    }
+}
@@ -0,0 +1,128 @@
+package cs309.stocks;
+
+import cs309.stocks.api.PriceRollups;
+import cs309.stocks.api.PriceSeries;
+import cs309.stocks.api.Resolution;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+/**
+ * Weekly, monthly and yearly bars rolled up from a hand-built daily history that crosses a month in
+ * the middle of a week, skips a holiday Monday and has a week with no trading at all.
+ */
+public class PriceRollupsTests {
+    // date, open, high, low, close
+    private static final Object[][] DAILY = {
+            {"2024-01-29", 10, 12, 9, 11},
+            {"2024-01-30", 11, 15, 10, 14},
+            {"2024-01-31", 14, 14, 8, 9},
+            {"2024-02-01", 9, 10, 7, 8},
+            {"2024-02-02", 8, 13, 8, 12},
+            {"2024-02-05", 12, 12, 10, 11},
+            {"2024-02-06", 11, 16, 11, 15},
+            {"2024-02-07", 15, 15, 6, 7},
+            {"2024-02-08", 7, 9, 7, 8},
+            {"2024-02-09", 8, 10, 8, 10},
+            // No trading the week of the 12th, and the 19th is a holiday
+            {"2024-02-20", 10, 11, 9, 10},
+            {"2024-02-21", 10, 18, 10, 17},
+            {"2024-03-01", 17, 17, 14, 15},
+    };
+
+    private final PriceRollups rollups = new PriceRollups(10);
+
+    @Test
+    public void testWeeklyBars() {
+        PriceSeries weeks = rollups.get("TEST", daily(DAILY.length), Resolution.WEEK);
+        assertBars(weeks, new Object[][]{
+                // Spans the end of January
+                {"2024-01-29", 10, 15, 7, 12},
+                {"2024-02-05", 12, 16, 6, 10},
+                // Dated by its first trading day, the Tuesday
+                {"2024-02-20", 10, 18, 9, 17},
+                {"2024-03-01", 17, 17, 14, 15},
+        });
+    }
+
+    @Test
+    public void testMonthlyBars() {
+        PriceSeries months = rollups.get("TEST", daily(DAILY.length), Resolution.MONTH);
+        assertBars(months, new Object[][]{
+                {"2024-01-29", 10, 15, 8, 9},
+                {"2024-02-01", 9, 18, 6, 17},
+                {"2024-03-01", 17, 17, 14, 15},
+        });
+    }
+
+    @Test
+    public void testYearlyBar() {
+        PriceSeries years = rollups.get("TEST", daily(DAILY.length), Resolution.YEAR);
+        assertBars(years, new Object[][]{{"2024-01-29", 10, 18, 6, 15}});
+    }
+
+    @Test
+    public void testDailyIsPassedThrough() {
+        PriceSeries daily = daily(DAILY.length);
+        assert rollups.get("TEST", daily, Resolution.DAY) == daily;
+    }
+
+    @Test
+    public void testAppendedBarsMatchRebuild() {
+        for (Resolution resolution : new Resolution[]{Resolution.WEEK, Resolution.MONTH, Resolution.YEAR}) {
+            PriceRollups incremental = new PriceRollups(10);
+            // Ends on the Monday, partway through the second week
+            PriceSeries before = incremental.get("TEST", daily(6), resolution);
+            PriceSeries beforeCopy = new PriceRollups(10).get("TEST", daily(6), resolution);
+            for (int days = 7; days <= DAILY.length; days++) {
+                PriceSeries folded = incremental.get("TEST", daily(days), resolution);
+                PriceSeries rebuilt = new PriceRollups(10).get("TEST", daily(days), resolution);
+                assertSame(folded, rebuilt);
+            }
+            // The bar updated in place since was copied first, so the earlier result is unchanged
+            assertSame(before, beforeCopy);
+            assert incremental.getMetrics().get("rebuilds").longValue() == 1;
+            assert incremental.getMetrics().get("foldedBars").longValue() == DAILY.length;
+        }
+    }
+
+    @Test
+    public void testReplacedHistoryIsRebuilt() {
+        rollups.get("TEST", daily(DAILY.length), Resolution.MONTH);
+        // A shorter history (say, after a split adjustment) cannot be folded into what was built
+        PriceSeries months = rollups.get("TEST", daily(5), Resolution.MONTH);
+        assertBars(months, new Object[][]{
+                {"2024-01-29", 10, 15, 8, 9},
+                {"2024-02-01", 9, 13, 7, 12},
+        });
+        assert rollups.getMetrics().get("rebuilds").longValue() == 2;
+    }
+
+    private static PriceSeries daily(int days) {
+        PriceSeries.Builder builder = new PriceSeries.Builder(days);
+        for (int i = 0; i < days; i++) {
+            Object[] bar = DAILY[i];
+            builder.add((int) LocalDate.parse((String) bar[0]).toEpochDay(), (int) bar[1], (int) bar[2], (int) bar[3], (int) bar[4]);
+        }
+        return builder.build();
+    }
+
+    private static void assertBars(PriceSeries series, Object[][] expected) {
+        assert series.size() == expected.length : series.size() + " bars";
+        for (int i = 0; i < expected.length; i++) {
+            Object[] bar = expected[i];
+            assert series.date(i).equals(LocalDate.parse((String) bar[0])) : "bar " + i + " dated " + series.date(i);
+            assert series.open(i) == (int) bar[1] && series.high(i) == (int) bar[2]
+                    && series.low(i) == (int) bar[3] && series.close(i) == (int) bar[4] : "bar " + i;
+        }
+    }
+
+    private static void assertSame(PriceSeries actual, PriceSeries expected) {
+        assert actual.size() == expected.size();
+        for (int i = 0; i < expected.size(); i++) {
+            assert actual.epochDay(i) == expected.epochDay(i);
+            assert actual.open(i) == expected.open(i) && actual.high(i) == expected.high(i)
+                    && actual.low(i) == expected.low(i) && actual.close(i) == expected.close(i) : "bar " + i;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package cs309.stocks;
+
+import cs309.stocks.api.Quote;
+import cs309.stocks.api.QuoteCache;
+import cs309.stocks.api.RawQuote;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Fetch sharing and stale serving of the quote cache, with a loader standing in for the upstream.
+ * The open and closed TTLs are equal so the results do not depend on the time of day.
+ */
+public class QuoteCacheTests {
+    private static final long TTL_MILLIS = 100;
+
+    // Background refreshes wait here until a test runs them
+    private final List<Runnable> refreshes = new ArrayList<>();
+    private final QuoteCache cache = new QuoteCache(TTL_MILLIS, TTL_MILLIS, 3600000, 100, refreshes::add);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void testFreshQuoteIsReused() {
+        Quote quote = cache.get("AAPL", false, counting(new Quote(new RawQuote())));
+        assert cache.get("aapl", true, counting(new Quote(new RawQuote()))) == quote;
+        assert loads.get() == 1;
+        assert cache.getMetrics().get("hits").longValue() == 1;
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneFetch() throws Exception {
+        int callers = 8;
+        CountDownLatch release = new CountDownLatch(1);
+        Quote quote = new Quote(new RawQuote());
+        Function<String, Quote> loader = symbol -> {
+            loads.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return quote;
+        };
+
+        Quote[] results = new Quote[callers];
+        Thread[] threads = new Thread[callers];
+        for (int i = 0; i < callers; i++) {
+            int caller = i;
+            threads[i] = new Thread(() -> results[caller] = cache.get("AAPL", false, loader));
+            threads[i].start();
+        }
+        // Hold the fetch until every other caller is waiting on it
+        while (cache.getMetrics().get("coalesced").longValue() < callers - 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assert loads.get() == 1;
+        for (Quote result : results) {
+            assert result == quote;
+        }
+    }
+
+    @Test
+    public void testFailedFetchReachesEveryWaiter() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Function<String, Quote> loader = symbol -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            throw new IllegalStateException("upstream down");
+        };
+
+        AtomicInteger failed = new AtomicInteger();
+        Runnable caller = () -> {
+            try {
+                cache.get("AAPL", false, loader);
+            } catch (IllegalStateException e) {
+                failed.incrementAndGet();
+            }
+        };
+        Thread first = new Thread(caller);
+        Thread second = new Thread(caller);
+        first.start();
+        second.start();
+        while (cache.getMetrics().get("coalesced").longValue() < 1) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        first.join();
+        second.join();
+        assert failed.get() == 2;
+    }
+
+    @Test
+    public void testExpiredQuoteServedStaleWhileRevalidating() throws Exception {
+        Quote old = cache.get("AAPL", true, counting(new Quote(new RawQuote())));
+        Thread.sleep(TTL_MILLIS + 20);
+
+        Quote fresh = new Quote(new RawQuote());
+        Quote stale = cache.get("AAPL", true, counting(fresh));
+        assert stale.isStale() && !old.isStale();
+        // The refresh runs in the background, and only once however many readers see the old quote
+        assert cache.get("AAPL", true, counting(fresh)).isStale();
+        assert loads.get() == 1;
+        assert refreshes.size() == 1;
+
+        refreshes.get(0).run();
+        assert loads.get() == 2;
+        assert cache.get("AAPL", true, counting(fresh)) == fresh;
+        assert cache.getMetrics().get("staleServed").longValue() == 2;
+        assert cache.getMetrics().get("revalidations").longValue() == 1;
+    }
+
+    @Test
+    public void testTradeWaitsForFreshQuote() throws Exception {
+        cache.get("AAPL", true, counting(new Quote(new RawQuote())));
+        Thread.sleep(TTL_MILLIS + 20);
+
+        Quote fresh = new Quote(new RawQuote());
+        assert cache.get("AAPL", false, counting(fresh)) == fresh;
+        assert loads.get() == 2;
+        assert refreshes.isEmpty();
+    }
+
+    private Function<String, Quote> counting(Quote quote) {
+        return symbol -> {
+            loads.incrementAndGet();
+            return quote;
+        };
+    }
+}
@@ -4,10 +4,13 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import cs309.stocks.Portfolios.Portfolio;
+import cs309.stocks.Stocks.OrderDTO;
 import cs309.stocks.Stocks.Stock;
 import cs309.stocks.Stocks.StockInformationDTO;
 import cs309.stocks.Transactions.Transaction;
 import cs309.stocks.api.DayStats;
+import cs309.stocks.api.PriceSeries;
+import cs309.stocks.api.PriceSeriesBinaryConverter;
 import cs309.stocks.api.Recommendation;
 import io.restassured.RestAssured;
 import io.restassured.config.SSLConfig;
@@ -20,8 +23,14 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -292,10 +301,7 @@ public class StockTests {
     @Test
     @Order(10)
     public void testPortfolioTransactions() throws JsonProcessingException {
-        Portfolio otherPortfolio = new Portfolio();
-        otherPortfolio.setName("Other Portfolio");
-        otherPortfolio.setCash(10000);
-        otherPortfolio = TestingUtils.createPortfolio(cookie, otherPortfolio);
+        Portfolio otherPortfolio = newPortfolio("Other Portfolio", 10000);
 
         Transaction t = new Transaction("TSLA", 5);
         Response response = TestingUtils.request(cookie).queryParam("portfolioId", otherPortfolio.getId())
@@ -313,6 +319,163 @@ public class StockTests {
         assert gotTransaction.getTicker().equals(t.getTicker());
     }
 
+    @Test
+    public void testOrders() throws JsonProcessingException {
+        Portfolio batchPortfolio = newPortfolio("Batch Portfolio", 10000);
+
+        List<OrderDTO> orders = List.of(
+                new OrderDTO("AAPL", 2, "buy"),
+                new OrderDTO("MSFT", 1, "buy"),
+                new OrderDTO("TSLA", 1, "sell"),
+                new OrderDTO("AAPL", -1, "buy"),
+                new OrderDTO("AAPL", 1, "sell"));
+        Response response = TestingUtils.request(cookie).queryParam("portfolioId", batchPortfolio.getId())
+                .header("Content-Type", "application/json")
+                .body(objectMapper.writeValueAsString(orders))
+                .post("/stock/orders");
+        assert response.getStatusCode() == 200;
+        List<String> statuses = response.getBody().jsonPath().getList("status");
+        assert statuses.equals(List.of("filled", "filled", "rejected", "rejected", "filled"));
+
+        response = TestingUtils.request(cookie).queryParam("id", batchPortfolio.getId()).get("/portfolio");
+        Portfolio gotPortfolio = response.as(Portfolio.class);
+        assert gotPortfolio.getStocks().size() == 2;
+        assert gotPortfolio.getCash() < 10000;
+
+        response = TestingUtils.request(cookie).queryParam("portfolioId", batchPortfolio.getId())
+                .header("Content-Type", "application/json")
+                .body(objectMapper.writeValueAsString(List.of(new OrderDTO("AAPL", 50000, "buy"))))
+                .post("/stock/orders");
+        assert response.getStatusCode() == 403;
+    }
+
+    @Test
+    public void testAsyncOrder() throws JsonProcessingException {
+        Portfolio asyncPortfolio = newPortfolio("Async Portfolio", 10000);
+
+        Response response = TestingUtils.request(cookie).queryParam("portfolioId", asyncPortfolio.getId())
+                .header("Content-Type", "application/json")
+                .body(objectMapper.writeValueAsString(new OrderDTO("MSFT", 1, "buy")))
+                .post("/stock/orders/async");
+        assert response.getStatusCode() == 202;
+        long id = response.getBody().jsonPath().getLong("id");
+
+        response = TestingUtils.request(cookie).queryParam("waitMs", 10000).get("/stock/orders/" + id);
+        assert response.getStatusCode() == 200;
+        assert response.getBody().jsonPath().getString("status").equals("filled");
+
+        response = TestingUtils.request(cookie).get("/stock/orders/" + (id + 1000000));
+        assert response.getStatusCode() == 404;
+    }
+
+    @Test
+    public void testConcurrentBuys() throws Exception {
+        Portfolio racePortfolio = newPortfolio("Race Portfolio", 10000);
+
+        double price = TestingUtils.request(cookie).queryParam("symbol", "AAPL").get("/stock/info")
+                .getBody().jsonPath().getDouble("currentPrice");
+        // Each buy spends about 60% of the cash, so only one of the two can go through
+        String body = objectMapper.writeValueAsString(new Transaction("AAPL", (int) (6000 / price)));
+        int portfolioId = racePortfolio.getId();
+        Callable<Integer> buy = () -> TestingUtils.request(cookie).queryParam("portfolioId", portfolioId)
+                .header("Content-Type", "application/json")
+                .body(body)
+                .post("/stock/buy")
+                .getStatusCode();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<Integer>> results = executor.invokeAll(List.of(buy, buy));
+            int succeeded = 0;
+            for (Future<Integer> result : results) {
+                if (result.get() == 200) {
+                    succeeded++;
+                }
+            }
+            assert succeeded == 1;
+        } finally {
+            executor.shutdown();
+        }
+
+        Response response = TestingUtils.request(cookie).queryParam("id", portfolioId).get("/portfolio");
+        assert response.as(Portfolio.class).getCash() >= 0;
+    }
+
+    @Test
+    public void testBuyMergesPosition() throws JsonProcessingException {
+        Portfolio mergePortfolio = newPortfolio("Merge Portfolio", 10000);
+
+        for (String ticker : List.of("AAPL", "aapl")) {
+            Response response = TestingUtils.request(cookie).queryParam("portfolioId", mergePortfolio.getId())
+                    .header("Content-Type", "application/json")
+                    .body(objectMapper.writeValueAsString(new Transaction(ticker, 1)))
+                    .post("/stock/buy");
+            assert response.getStatusCode() == 200;
+        }
+
+        Portfolio p = TestingUtils.request(cookie).queryParam("id", mergePortfolio.getId()).get("/portfolio").as(Portfolio.class);
+        assert p.getStocks().size() == 1;
+        assert p.getPosition("AAPL").getShares() == 2;
+    }
+
+    @Test
+    public void testPortfolioAsOf() throws JsonProcessingException, InterruptedException {
+        Portfolio historyPortfolio = newPortfolio("History Portfolio", 10000);
+
+        long between = 0;
+        for (String ticker : List.of("AAPL", "MSFT")) {
+            Response response = TestingUtils.request(cookie).queryParam("portfolioId", historyPortfolio.getId())
+                    .header("Content-Type", "application/json")
+                    .body(objectMapper.writeValueAsString(new Transaction(ticker, 1)))
+                    .post("/stock/buy");
+            assert response.getStatusCode() == 200;
+            if (between == 0) {
+                Thread.sleep(50);
+                between = System.currentTimeMillis();
+                Thread.sleep(50);
+            }
+        }
+
+        Portfolio before = TestingUtils.request(cookie).queryParam("id", historyPortfolio.getId())
+                .queryParam("timestamp", 0).get("/portfolio/asof").as(Portfolio.class);
+        assert before.getStocks().isEmpty();
+        assert before.getCash() == 10000;
+
+        Portfolio past = TestingUtils.request(cookie).queryParam("id", historyPortfolio.getId())
+                .queryParam("timestamp", between).get("/portfolio/asof").as(Portfolio.class);
+        assert past.getStocks().size() == 1;
+        assert past.getPosition("AAPL").getShares() == 1;
+        assert past.getCash() < 10000;
+    }
+
+    @Test
+    public void testIdempotentBuy() throws JsonProcessingException {
+        Portfolio retryPortfolio = newPortfolio("Retry Portfolio", 10000);
+
+        String key = UUID.randomUUID().toString();
+        String body = objectMapper.writeValueAsString(new Transaction("AAPL", 1));
+        for (int i = 0; i < 2; i++) {
+            Response response = TestingUtils.request(cookie).queryParam("portfolioId", retryPortfolio.getId())
+                    .header("Content-Type", "application/json")
+                    .header("Idempotency-Key", key)
+                    .body(body)
+                    .post("/stock/buy");
+            assert response.getStatusCode() == 200;
+            assert response.asString().equals("Purchase successful");
+        }
+
+        Portfolio p = TestingUtils.request(cookie).queryParam("id", retryPortfolio.getId()).get("/portfolio").as(Portfolio.class);
+        assert p.getPosition("AAPL").getShares() == 1;
+
+        // The same key with a different request is refused
+        Response response = TestingUtils.request(cookie).queryParam("portfolioId", retryPortfolio.getId())
+                .header("Content-Type", "application/json")
+                .header("Idempotency-Key", key)
+                .body(objectMapper.writeValueAsString(new Transaction("AAPL", 2)))
+                .post("/stock/buy");
+        assert response.getStatusCode() == 422;
+    }
+
     @Test
     public void testHistorical() {
         Response response = TestingUtils.request(cookie).queryParam("symbol", "AAPL")
@@ -327,6 +490,74 @@ public class StockTests {
         }
     }
 
+    @Test
+    public void testHistoricalRange() throws JsonProcessingException {
+        Response response = TestingUtils.request(cookie).queryParam("symbol", "AAPL")
+                .queryParam("from", LocalDate.now().minusYears(1).toString())
+                .queryParam("resolution", "week")
+                .queryParam("maxPoints", 20)
+                .get("/stock/historical");
+        assert response.getStatusCode() == 200;
+        List<DayStats> bars = objectMapper.readValue(response.asString(), new TypeReference<List<DayStats>>() {
+        });
+        assert bars.size() <= 20;
+
+        response = TestingUtils.request(cookie).queryParam("symbol", "AAPL")
+                .queryParam("resolution", "hour")
+                .get("/stock/historical");
+        assert response.getStatusCode() == 400;
+    }
+
+    @Test
+    public void testHistoricalBinary() throws JsonProcessingException {
+        Response json = TestingUtils.request(cookie).queryParam("symbol", "AAPL")
+                .get("/stock/historical");
+        Response binary = TestingUtils.request(cookie).queryParam("symbol", "AAPL")
+                .header("Accept", PriceSeriesBinaryConverter.MEDIA_TYPE.toString())
+                .get("/stock/historical");
+        assert binary.getStatusCode() == 200;
+        assert binary.getContentType().startsWith(PriceSeriesBinaryConverter.MEDIA_TYPE.toString());
+
+        List<DayStats> bars = objectMapper.readValue(json.asString(), new TypeReference<List<DayStats>>() {
+        });
+        PriceSeries decoded = PriceSeriesBinaryConverter.decode(binary.asByteArray());
+        assert decoded.size() == bars.size();
+        // The JSON lists the newest bar first, the binary form the oldest
+        double step = 1.0 / PriceSeriesBinaryConverter.SCALE;
+        for (int i = 0; i < decoded.size(); i++) {
+            DayStats bar = bars.get(bars.size() - 1 - i);
+            assert decoded.date(i).toString().equals(bar.getDate());
+            assert Math.abs(decoded.close(i) - bar.getClose()) <= step;
+        }
+        DayStats newest = bars.get(0);
+        int last = decoded.size() - 1;
+        assert Math.abs(decoded.open(last) - newest.getOpen()) <= step;
+        assert Math.abs(decoded.high(last) - newest.getHigh()) <= step;
+        assert Math.abs(decoded.low(last) - newest.getLow()) <= step;
+        assert binary.asByteArray().length * 4 < json.asByteArray().length;
+    }
+
+    @Test
+    public void testIndicators() {
+        Response response = TestingUtils.request(cookie).queryParam("symbol", "AAPL")
+                .queryParam("indicator", "sma")
+                .queryParam("period", 20)
+                .get("/stock/indicators");
+        assert response.getStatusCode() == 200;
+        assert response.getBody().jsonPath().getDouble("[0].value") > 0;
+
+        response = TestingUtils.request(cookie).queryParam("symbol", "AAPL")
+                .queryParam("indicator", "macd")
+                .get("/stock/indicators");
+        assert response.getStatusCode() == 200;
+        assert response.getBody().jsonPath().getString("[0].signal") != null;
+
+        response = TestingUtils.request(cookie).queryParam("symbol", "AAPL")
+                .queryParam("indicator", "vwap")
+                .get("/stock/indicators");
+        assert response.getStatusCode() == 400;
+    }
+
     @Test
     public void testRecommendation() {
         Response response = TestingUtils.request(cookie).queryParam("symbol", "AAPL")
@@ -374,6 +605,13 @@ public class StockTests {
                 .delete("/user/delete");
     }
 
+    private Portfolio newPortfolio(String name, double cash) throws JsonProcessingException {
+        Portfolio portfolio = new Portfolio();
+        portfolio.setName(name);
+        portfolio.setCash(cash);
+        return TestingUtils.createPortfolio(cookie, portfolio);
+    }
+
     /*
     Verifies transaction was applied to the portfolio
      */
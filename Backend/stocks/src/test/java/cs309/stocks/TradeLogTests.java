@@ -0,0 +1,173 @@
+package cs309.stocks;
+
+import cs309.stocks.Stocks.TradeLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Recovery of the trade journal across restarts: each test writes a journal, then opens its directory
+ * (or a damaged copy of it) again as the next run of the server would.
+ */
+public class TradeLogTests {
+    private static final int SEGMENT_BYTES = 4096;
+    // length, then sequence, portfolio, user, shares, price, time and ticker length, then "AAPL" and the checksum
+    private static final int RECORD_BYTES = 4 + 8 + 4 + 4 + 4 + 8 + 8 + 2 + 4 + 4;
+
+    @TempDir
+    Path journal;
+    @TempDir
+    Path restarted;
+
+    @Test
+    public void testReplayAfterRestart() throws Exception {
+        TradeLog log = new TradeLog(journal, SEGMENT_BYTES);
+        assert log.open(0).isEmpty();
+        write(log, trade(1, 10, 5.0), trade(1, -4, 6.0));
+        write(log, trade(2, 3, 7.5));
+
+        List<TradeLog.Entry> replayed = new TradeLog(journal, SEGMENT_BYTES).open(0);
+        assert replayed.size() == 3;
+        assert replayed.get(0).equals(new TradeLog.Entry(1, 1, 7, "AAPL", 10, 5.0, 1000));
+        assert replayed.get(1).equals(new TradeLog.Entry(2, 1, 7, "AAPL", -4, 6.0, 1000));
+        assert replayed.get(2).equals(new TradeLog.Entry(3, 2, 7, "AAPL", 3, 7.5, 1000));
+
+        // Only what the database has not applied yet is replayed, and numbering carries on after the rest
+        TradeLog reopened = new TradeLog(journal, SEGMENT_BYTES);
+        List<TradeLog.Entry> unapplied = reopened.open(2);
+        assert unapplied.size() == 1 && unapplied.get(0).sequence() == 3;
+        assert write(reopened, trade(1, 1, 1.0)).get(0).sequence() == 4;
+    }
+
+    @Test
+    public void testReplayAcrossSegments() throws Exception {
+        TradeLog log = new TradeLog(journal, SEGMENT_BYTES);
+        log.open(0);
+        int records = 3 * SEGMENT_BYTES / RECORD_BYTES;
+        for (int i = 0; i < records; i++) {
+            write(log, trade(1, i + 1, 1.0));
+        }
+        assert log.getSegments() > 3;
+
+        log.release(records / 2);
+        List<TradeLog.Entry> replayed = new TradeLog(journal, SEGMENT_BYTES).open(records / 2);
+        assert replayed.size() == records - records / 2;
+        for (int i = 0; i < replayed.size(); i++) {
+            assert replayed.get(i).sequence() == records / 2 + i + 1;
+        }
+    }
+
+    @Test
+    public void testBadChecksumEndsReplay() throws Exception {
+        TradeLog log = new TradeLog(journal, SEGMENT_BYTES);
+        log.open(0);
+        write(log, trade(1, 1, 1.0), trade(1, 2, 1.0), trade(1, 3, 1.0));
+
+        // Flip a bit in the third record's shares, leaving its length intact
+        byte[] segment = Files.readAllBytes(onlySegment(journal));
+        segment[2 * RECORD_BYTES + 4 + 16] ^= 1;
+        Files.write(restarted.resolve(onlySegment(journal).getFileName()), segment);
+
+        TradeLog recovered = new TradeLog(restarted, SEGMENT_BYTES);
+        List<TradeLog.Entry> replayed = recovered.open(0);
+        assert replayed.size() == 2;
+        assert replayed.get(1).shares() == 2;
+
+        // The lost record's sequence number is handed out again, and a later restart reads past the damage
+        assert write(recovered, trade(1, 30, 1.0)).get(0).sequence() == 3;
+        List<TradeLog.Entry> again = new TradeLog(restarted, SEGMENT_BYTES).open(0);
+        assert again.size() == 3;
+        assert again.get(2).sequence() == 3 && again.get(2).shares() == 30;
+    }
+
+    @Test
+    public void testTornTailEndsReplay() throws Exception {
+        TradeLog log = new TradeLog(journal, SEGMENT_BYTES);
+        log.open(0);
+        write(log, trade(1, 1, 1.0), trade(1, 2, 1.0), trade(1, 3, 1.0));
+
+        // The file ends partway through the third record, as if the machine lost power while writing it
+        byte[] segment = Files.readAllBytes(onlySegment(journal));
+        byte[] torn = new byte[2 * RECORD_BYTES + RECORD_BYTES / 2];
+        System.arraycopy(segment, 0, torn, 0, torn.length);
+        Files.write(restarted.resolve(onlySegment(journal).getFileName()), torn);
+
+        List<TradeLog.Entry> replayed = new TradeLog(restarted, SEGMENT_BYTES).open(0);
+        assert replayed.size() == 2;
+        assert replayed.get(1).sequence() == 2;
+    }
+
+    @Test
+    public void testImpossibleLengthEndsReplay() throws Exception {
+        TradeLog log = new TradeLog(journal, SEGMENT_BYTES);
+        log.open(0);
+        write(log, trade(1, 1, 1.0), trade(1, 2, 1.0));
+
+        byte[] segment = Files.readAllBytes(onlySegment(journal));
+        ByteBuffer.wrap(segment).order(ByteOrder.LITTLE_ENDIAN).putInt(RECORD_BYTES, Integer.MAX_VALUE);
+        Files.write(restarted.resolve(onlySegment(journal).getFileName()), segment);
+
+        List<TradeLog.Entry> replayed = new TradeLog(restarted, SEGMENT_BYTES).open(0);
+        assert replayed.size() == 1;
+    }
+
+    @Test
+    public void testCheckpointAheadOfJournal() throws Exception {
+        TradeLog log = new TradeLog(journal, SEGMENT_BYTES);
+        log.open(0);
+        write(log, trade(1, 1, 1.0), trade(1, 2, 1.0));
+
+        // The database has applied records this journal never saw, e.g. from a journal directory since lost
+        TradeLog behind = new TradeLog(journal, SEGMENT_BYTES);
+        assert behind.open(10).isEmpty();
+        // New records must be numbered past the checkpoint, or the next replay would skip them as applied
+        assert write(behind, trade(1, 3, 1.0)).get(0).sequence() == 11;
+
+        List<TradeLog.Entry> replayed = new TradeLog(journal, SEGMENT_BYTES).open(10);
+        assert replayed.size() == 1;
+        assert replayed.get(0).sequence() == 11 && replayed.get(0).shares() == 3;
+    }
+
+    @Test
+    public void testTradeTooLargeForSegment() throws Exception {
+        TradeLog log = new TradeLog(journal, SEGMENT_BYTES);
+        log.open(0);
+        TradeLog.Entry[] records = new TradeLog.Entry[SEGMENT_BYTES / RECORD_BYTES + 1];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = trade(1, 1, 1.0);
+        }
+        try {
+            log.append(List.of(records));
+            assert false;
+        } catch (IOException expected) {
+            // Nothing of it is written
+        }
+        assert log.getAppended() == 0;
+        assert write(log, trade(1, 1, 1.0)).get(0).sequence() == 1;
+    }
+
+    private static TradeLog.Entry trade(int portfolioId, int shares, double price) {
+        return new TradeLog.Entry(0, portfolioId, 7, "AAPL", shares, price, 1000);
+    }
+
+    private static List<TradeLog.Entry> write(TradeLog log, TradeLog.Entry... records) throws Exception {
+        List<TradeLog.Entry> entries = log.append(List.of(records));
+        log.awaitDurable(entries.get(entries.size() - 1).sequence());
+        return entries;
+    }
+
+    private static Path onlySegment(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.toList();
+            assert segments.size() == 1;
+            return segments.get(0);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package cs309.stocks;
+
+import cs309.stocks.Exceptions.UpstreamRejectedException;
+import cs309.stocks.api.RequestPriority;
+import cs309.stocks.api.UpstreamScheduler;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Token handout of the upstream scheduler: the burst, lane order once the bucket is empty, and callers
+ * shed at their lane's deadline.
+ */
+public class UpstreamSchedulerTests {
+    @Test
+    public void testBurstIsGrantedImmediately() {
+        UpstreamScheduler scheduler = new UpstreamScheduler("TEST", 1, 3, 5000, 5000, 5000);
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            assert scheduler.execute(RequestPriority.SEARCH, () -> "ok").equals("ok");
+        }
+        assert System.nanoTime() - start < 1_000_000_000L;
+        assert lane(scheduler, "search").get("granted").longValue() == 3;
+    }
+
+    @Test
+    public void testShedAtDeadline() {
+        UpstreamScheduler scheduler = new UpstreamScheduler("TEST", 1, 1, 5000, 5000, 100);
+        scheduler.execute(RequestPriority.SEARCH, () -> "ok");
+
+        long start = System.nanoTime();
+        try {
+            scheduler.execute(RequestPriority.SEARCH, () -> {
+                throw new AssertionError("ran without a token");
+            });
+            assert false;
+        } catch (UpstreamRejectedException expected) {
+        }
+        long waited = (System.nanoTime() - start) / 1_000_000;
+        assert waited >= 100 && waited < 2000;
+
+        Map<String, Number> search = lane(scheduler, "search");
+        assert search.get("rejected").longValue() == 1;
+        assert search.get("queueDepth").intValue() == 0;
+    }
+
+    @Test
+    public void testHigherLaneGoesFirst() throws Exception {
+        // One token every 500 ms, after a burst of one
+        UpstreamScheduler scheduler = new UpstreamScheduler("TEST", 120, 1, 5000, 5000, 5000);
+        scheduler.execute(RequestPriority.SEARCH, () -> "ok");
+
+        List<RequestPriority> order = Collections.synchronizedList(new ArrayList<>());
+        Thread search = start(scheduler, RequestPriority.SEARCH, order);
+        while (lane(scheduler, "search").get("queueDepth").intValue() == 0) {
+            Thread.sleep(1);
+        }
+        // Queued after the search, but granted the next token ahead of it
+        Thread trade = start(scheduler, RequestPriority.TRADE, order);
+        search.join();
+        trade.join();
+
+        assert order.equals(List.of(RequestPriority.TRADE, RequestPriority.SEARCH));
+    }
+
+    private static Thread start(UpstreamScheduler scheduler, RequestPriority priority, List<RequestPriority> order) {
+        Thread thread = new Thread(() -> {
+            try {
+                scheduler.execute(priority, () -> order.add(priority));
+            } catch (UpstreamRejectedException e) {
+                // Left out of the order
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Number> lane(UpstreamScheduler scheduler, String name) {
+        return (Map<String, Number>) scheduler.getMetrics().get(name);
+    }
+}